@@ -1,7 +1,10 @@
 package io.coon;
 
 import io.coon.api.Mconf;
+import io.coon.api.Mlock;
 import io.coon.api.Mreg;
+import io.coon.api.MreadWriteLock;
+import io.coon.api.Msemaphore;
 import io.coon.support.Consts;
 import io.neural.NURL;
 import io.neural.extension.ExtensionLoader;
@@ -49,7 +52,7 @@ public enum Coon {
 	@SuppressWarnings("unchecked")
 	public <T> T getCoon(NURL nurl, Class<T> cls) {
 		nurl = nurl.setPath(cls.getName()).addParameter(Consts.INTERFACE_KEY, cls.getName());
-		String key = nurl.toServiceString();
+		String key = this.toCoonKey(nurl, cls);
 
 		LOCK.lock();
 		try {
@@ -62,12 +65,16 @@ public enum Coon {
 				coon = createMreg(nurl);
 			} else if (Mconf.class.getName().equals(cls.getName())) {
 				coon = createMconf(nurl);
+			} else if (Mlock.class.getName().equals(cls.getName())) {
+				coon = createMlock(nurl);
+			} else if (MreadWriteLock.class.getName().equals(cls.getName())) {
+				coon = createMreadWriteLock(nurl);
+			} else if (Msemaphore.class.getName().equals(cls.getName())) {
+				coon = createMsemaphore(nurl);
 			}
 
 			if (coon == null) {
 				throw new IllegalStateException("Can not create coon " + nurl);
-			} else {
-				coon.connect(nurl);
 			}
 
 			COON_MAP.put(key, coon);
@@ -98,6 +105,23 @@ public enum Coon {
 		}
 	}
 
+	/**
+	 * 分布式锁、读写锁和信号量按名称区分实例
+	 * 
+	 * @param nurl
+	 * @param cls
+	 * @return
+	 */
+	private String toCoonKey(NURL nurl, Class<?> cls) {
+		String key = nurl.toServiceString();
+		if (Mlock.class.getName().equals(cls.getName()) || MreadWriteLock.class.getName().equals(cls.getName())
+				|| Msemaphore.class.getName().equals(cls.getName())) {
+			key = key + "?" + Consts.LOCK_KEY + "=" + nurl.getParameter(Consts.LOCK_KEY);
+		}
+		
+		return key;
+	}
+
 	private Mreg createMreg(NURL nurl) {
 		logger.info("Is loading mreg center...");
 		Mreg mreg = ExtensionLoader.getLoader(Mreg.class).getExtension(nurl.getProtocol());
@@ -124,4 +148,43 @@ public enum Coon {
 		return mconf;
 	}
 
+	private Mlock createMlock(NURL nurl) {
+		logger.info("Is loading mlock center...");
+		Mlock mlock = ExtensionLoader.getLoader(Mlock.class).getExtension(nurl.getProtocol());
+		mlock.connect(nurl);
+		if (!mlock.available()) {
+			throw new IllegalStateException("No mlock center available: " + nurl);
+		} else {
+			logger.info("The mlock center started successed!");
+		}
+
+		return mlock;
+	}
+
+	private MreadWriteLock createMreadWriteLock(NURL nurl) {
+		logger.info("Is loading mread write lock center...");
+		MreadWriteLock mreadWriteLock = ExtensionLoader.getLoader(MreadWriteLock.class).getExtension(nurl.getProtocol());
+		mreadWriteLock.connect(nurl);
+		if (!mreadWriteLock.available()) {
+			throw new IllegalStateException("No mread write lock center available: " + nurl);
+		} else {
+			logger.info("The mread write lock center started successed!");
+		}
+
+		return mreadWriteLock;
+	}
+
+	private Msemaphore createMsemaphore(NURL nurl) {
+		logger.info("Is loading msemaphore center...");
+		Msemaphore msemaphore = ExtensionLoader.getLoader(Msemaphore.class).getExtension(nurl.getProtocol());
+		msemaphore.connect(nurl);
+		if (!msemaphore.available()) {
+			throw new IllegalStateException("No msemaphore center available: " + nurl);
+		} else {
+			logger.info("The msemaphore center started successed!");
+		}
+
+		return msemaphore;
+	}
+
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package io.coon.api;
 
 import io.coon.CoonService;
+import io.coon.support.CoonFuture;
 import io.coon.support.CoonListener;
 import io.coon.support.mconf.Mcf;
 import io.neural.extension.NPI;
@@ -53,4 +54,13 @@ public interface Mconf extends CoonService {
 	
 	Map<String, Map<String, String>> confs();
 
+	// ===== Async, 语义与对应的同步方法相同，不阻塞调用线程
+	CoonFuture<Void> publishAsync(Mcf mcf, Object obj);
+
+	CoonFuture<Void> unpublishAsync(Mcf mcf, Object obj);
+
+	<T> CoonFuture<T> lookupAsync(Mcf mcf, Class<T> cls);
+
+	<T> CoonFuture<List<T>> lookupsAsync(Mcf mcf, Class<T> cls);
+
 }
@@ -1,13 +1,27 @@
 package io.coon.api;
 
+import io.coon.CoonService;
+import io.neural.extension.NPI;
+
 import java.util.concurrent.TimeUnit;
 
 /**
- * The Micro Service Lock.
+ * The Micro Service Lock.<br>
+ * <br>
+ * 连接分布式锁需处理契约：<br>
+ * 1. 通过lock=[name]参数指定锁名称，同名的锁互斥。<br>
+ * 2. Redis支持lease=30000锁租约时间设置，持有期间自动续约，持有者异常退出后到期自动释放。<br>
+ * 3. Zookeeper以临时顺序节点公平排队，持有者会话失效后自动释放，等待中会话断开时抛出异常。<br>
+ * 4. 同一线程可重入，lock与unlock需成对出现。<br>
+ * <br>
+ * Connect URL:<br>
+ * zookeeper://127.0.0.1:2181/mlock?lock=[name]&session=60000<br>
+ * redis://127.0.0.1:6379/mlock?lock=[name]&lease=30000<br>
  *
  * @author lry
  **/
-public interface Mlock {
+@NPI("zookeeper")
+public interface Mlock extends CoonService {
 
     /**
      * 获取锁，如果锁被占用，将禁用当前线程，并且在获得锁之前，该线程将一直处于阻塞状态
@@ -0,0 +1,38 @@
+package io.coon.api;
+
+import io.coon.CoonService;
+import io.neural.extension.NPI;
+
+/**
+ * The Micro Service Read Write Lock.<br>
+ * <br>
+ * 连接分布式读写锁需处理契约：<br>
+ * 1. 通过lock=[name]参数指定锁名称，同名的读写锁之间：读锁共享，写锁与任何锁互斥。<br>
+ * 2. 写锁优先：有写锁在等待时新的读锁需排队，避免写锁饥饿。<br>
+ * 3. 持有写锁的线程可以再获取读锁(降级)，持有读锁的线程不能再获取写锁(升级会死锁)。<br>
+ * 4. 租约、会话和重入语义同{@link Mlock}。<br>
+ * <br>
+ * Connect URL:<br>
+ * zookeeper://127.0.0.1:2181/mlock?lock=[name]&session=60000<br>
+ * redis://127.0.0.1:6379/mlock?lock=[name]&lease=30000<br>
+ *
+ * @author lry
+ **/
+@NPI("zookeeper")
+public interface MreadWriteLock extends CoonService {
+
+    /**
+     * 读锁(共享锁)
+     *
+     * @return
+     */
+    Mlock readLock();
+
+    /**
+     * 写锁(排它锁)
+     *
+     * @return
+     */
+    Mlock writeLock();
+
+}
@@ -1,11 +1,14 @@
 package io.coon.api;
 
 import io.coon.CoonService;
+import io.coon.support.CoonFuture;
 import io.coon.support.CoonListener;
 import io.neural.NURL;
 import io.neural.extension.NPI;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The MicroService Registry Center.<br>
@@ -14,9 +17,17 @@ import java.util.List;
  * 1. 当设置check=false时表示不检查连接，否则在连接不上时抛出异常。<br>
  * 2. 支持NURL上的username:password权限认证。<br>
  * 3. 支持backup=1.2.3.4:2181,1.2.3.5:2181备选注册中心集群地址。<br>
- * 4. 支持file=registry.cache本地磁盘文件缓存。<br>
+ * 4. 支持file=registry.cache本地磁盘文件缓存，以及save.debounce=1000合并写入窗口和save.max.delay=5000最大写入延迟设置。<br>
  * 5. 支持timeout=1000请求超时设置。<br>
  * 6. 支持session=60000会话超时或过期设置。<br>
+ * 7. Redis支持heartbeat.mode=script|pipeline心跳续期方式和heartbeat.batch=500每批条数设置。<br>
+ * 8. 支持listener.async=true异步回调监听器，以及listener.threads=4回调线程数和listener.queues=1000队列长度设置。<br>
+ * 9. 支持parse.cache=10000注册数据解析缓存容量设置。<br>
+ * 10. 支持bulk.threads=16批量及异步操作线程数，以及async.threads=4无原生异步接口时的异步线程数设置。<br>
+ * 11. Zookeeper支持multi.batch=500批量注册时每个multi事务的最大操作数设置。<br>
+ * 12. Zookeeper支持watch=watcher|tree|persistent监听方式设置，tree时本地缓存整棵注册树，订阅和查询由本地缓存服务(仅curator)；persistent时在注册根路径上注册ZooKeeper 3.6+永久递归监听，客户端或服务端不支持时回退为watcher。<br>
+ * 13. Zookeeper支持lookup=remote|local查询方式，以及lookup.stale=1000未订阅服务查询结果的最大过期时间和lookup.cache=1024近端缓存容量设置。<br>
+ * 14. Zookeeper支持wildcard.threads=8通配订阅展开各服务订阅的并行线程数设置。<br>
  * 
  * @author lry
  */
@@ -48,6 +59,17 @@ public interface Mreg extends CoonService {
      */
     void unregister(NURL nurl);
 
+    /**
+     * 批量注册.
+     * 
+     * 批量注册需处理契约：<br>
+     * 1. 每条数据的语义与{@link #register(NURL)}相同。<br>
+     * 2. 所有数据写入注册中心或记入失败重试后才返回，单条失败不影响其它数据。<br>
+     * 
+     * @param nurls 注册信息列表，不允许为空
+     */
+    void registerAll(Collection<NURL> nurls);
+
     /**
      * 订阅符合条件的已注册数据，当有注册数据变更时自动推送.
      * 
@@ -59,6 +81,7 @@ public interface Mreg extends CoonService {
      * 5. 当注册中心重启，网络抖动，需自动恢复订阅请求。<br>
      * 6. 允许URI相同但参数不同的URL并存，不能覆盖。<br>
      * 7. 必须阻塞订阅过程，等第一次通知完后再返回。<br>
+     * 8. 监听器实现了{@link io.coon.support.DeltaCoonListener}时，每个分类第一次全量通知后只回调增量变更。<br>
      * 
      * 
      * 当收到服务变更通知时触发。
@@ -74,6 +97,17 @@ public interface Mreg extends CoonService {
      */
     void subscribe(NURL nurl, CoonListener<NURL> listener);
 
+    /**
+     * 批量订阅.
+     * 
+     * 批量订阅需处理契约：<br>
+     * 1. 每个订阅的语义与{@link #subscribe(NURL, CoonListener)}相同。<br>
+     * 2. 各订阅并行执行，所有订阅完成第一次通知或记入失败重试后才返回。<br>
+     * 
+     * @param subscriptions 订阅条件 -> 变更事件监听器，不允许为空
+     */
+    void subscribeAll(Map<NURL, CoonListener<NURL>> subscriptions);
+
     /**
      * 取消订阅.
      * 
@@ -94,4 +128,46 @@ public interface Mreg extends CoonService {
      */
     List<NURL> lookup(NURL nurl);
 
+    /**
+     * 异步注册，语义与{@link #register(NURL)}相同，失败记入重试时视为成功完成，否则以异常完成.
+     * 
+     * @param nurl 注册信息，不允许为空
+     * @return 注册结果
+     */
+    CoonFuture<Void> registerAsync(NURL nurl);
+
+    /**
+     * 异步取消注册，语义与{@link #unregister(NURL)}相同.
+     * 
+     * @param nurl 注册信息，不允许为空
+     * @return 取消注册结果
+     */
+    CoonFuture<Void> unregisterAsync(NURL nurl);
+
+    /**
+     * 异步订阅，语义与{@link #subscribe(NURL, CoonListener)}相同，第一次通知完后完成.
+     * 
+     * @param nurl 订阅条件，不允许为空
+     * @param listener 变更事件监听器，不允许为空
+     * @return 订阅结果
+     */
+    CoonFuture<Void> subscribeAsync(NURL nurl, CoonListener<NURL> listener);
+
+    /**
+     * 异步取消订阅，语义与{@link #unsubscribe(NURL, CoonListener)}相同.
+     * 
+     * @param nurl 订阅条件，不允许为空
+     * @param listener 变更事件监听器，不允许为空
+     * @return 取消订阅结果
+     */
+    CoonFuture<Void> unsubscribeAsync(NURL nurl, CoonListener<NURL> listener);
+
+    /**
+     * 异步查询，语义与{@link #lookup(NURL)}相同.
+     * 
+     * @param nurl 查询条件，不允许为空
+     * @return 已注册信息列表
+     */
+    CoonFuture<List<NURL>> lookupAsync(NURL nurl);
+
 }
\ No newline at end of file
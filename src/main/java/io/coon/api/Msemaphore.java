@@ -0,0 +1,54 @@
+package io.coon.api;
+
+import io.coon.CoonService;
+import io.neural.extension.NPI;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Micro Service Semaphore.<br>
+ * <br>
+ * 连接分布式信号量需处理契约：<br>
+ * 1. 通过lock=[name]参数指定信号量名称，permits=[n]指定许可总数，同名信号量的许可数需一致。<br>
+ * 2. 每个许可是一个带租约的持有记录，持有者异常退出后到期(Redis)或会话失效(Zookeeper)自动归还。<br>
+ * 3. 许可不绑定线程，本实例获得的许可可由任意线程release。<br>
+ * <br>
+ * Connect URL:<br>
+ * zookeeper://127.0.0.1:2181/mlock?lock=[name]&permits=10<br>
+ * redis://127.0.0.1:6379/mlock?lock=[name]&permits=10&lease=30000<br>
+ *
+ * @author lry
+ **/
+@NPI("zookeeper")
+public interface Msemaphore extends CoonService {
+
+    /**
+     * 获取一个许可，在获得许可之前一直阻塞，直到线程被中断
+     *
+     * @throws InterruptedException
+     */
+    void acquire() throws InterruptedException;
+
+    /**
+     * 如果有可用许可，则获取并立即返回true，否则立即返回false
+     *
+     * @return
+     */
+    boolean tryAcquire();
+
+    /**
+     * 如果在给定时间内有可用许可，则获取并返回true，否则返回false
+     *
+     * @param time
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     */
+    boolean tryAcquire(long time, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 归还本实例获得的一个许可
+     */
+    void release();
+
+}
@@ -0,0 +1,354 @@
+package io.coon.redis;
+
+import io.coon.support.Consts;
+import io.coon.support.NamedThreadFactory;
+import io.coon.support.mlock.exception.MlockException;
+import io.neural.NURL;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * Redis分布式锁、读写锁和信号量共用的连接、释放消息订阅、等待和看门狗续约。<br>
+ * <br>
+ * 释放时在/[group]/[lock]上发布消息，等待者通过订阅被唤醒，而非轮询。<br>
+ *
+ * @author lry
+ */
+final class RedisLockContext {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisLockContext.class);
+
+	private static final String DEFAULT_ROOT = "mlock";
+	static final String RELEASE_MESSAGE = "unlock";
+	/**
+	 * 脚本前缀：以Redis服务器时间(ms)定义局部变量now，租约到期时间不受各客户端时钟偏差影响。<br>
+	 * TIME为非确定命令，其后的写命令需按效果复制，要求Redis 3.2+。
+	 */
+	static final String SERVER_NOW = "redis.replicate_commands() " +
+			"local t = redis.call('time') local now = t[1] * 1000 + math.floor(t[2] / 1000) ";
+
+	private final NURL nurl;
+	private final String key;
+	private final long lease;
+	private final int reconnectPeriod;
+	private final JedisPool jedisPool;
+	// 释放事件代数，订阅线程收到释放消息后加一并唤醒等待者；只记代数不记次数，无竞争的释放不会累积
+	private final Object released = new Object();
+	private long generation;
+	private volatile Subscriber subscriber;
+	private final ConcurrentMap<String, ScheduledFuture<?>> watchdogs = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+	private final ScheduledExecutorService watchdogExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("RedisMlockWatchdog", true));
+
+	RedisLockContext(NURL nurl, String name) {
+		if (nurl.isAnyHost()) {
+			throw new IllegalStateException("mlock address == null");
+		}
+
+		// 锁需要单点互斥，只使用主地址
+		this.nurl = nurl;
+		this.jedisPool = RedisSupport.toJedisPool(RedisSupport.toPoolConfig(nurl), nurl, nurl.getAddress());
+		this.lease = nurl.getParameter(Consts.LEASE_KEY, Consts.DEFAULT_LEASE);
+		this.reconnectPeriod = nurl.getParameter(Consts.REGISTRY_RECONNECT_PERIOD_KEY, Consts.DEFAULT_REGISTRY_RECONNECT_PERIOD);
+		String group = nurl.getParameter(Consts.GROUP_KEY, DEFAULT_ROOT);
+		if (!group.startsWith(Consts.PATH_SEPARATOR)) {
+			group = Consts.PATH_SEPARATOR + group;
+		}
+		this.key = group + Consts.PATH_SEPARATOR + name;
+	}
+
+	/**
+	 * 锁Key，同时也是释放消息的频道
+	 *
+	 * @return
+	 */
+	String getKey() {
+		return key;
+	}
+
+	long getLease() {
+		return lease;
+	}
+
+	boolean isAvailable() {
+		return !jedisPool.isClosed();
+	}
+
+	Object eval(RedisScript script, List<String> keys, List<String> args) {
+		Jedis jedis = null;
+		try {
+			jedis = jedisPool.getResource();
+			return script.eval(jedis, keys, args);
+		} catch (Exception e) {
+			throw new MlockException("Failed to eval mlock script on " + key + " from redis " + nurl.getAddress() + ", cause: " + e.getMessage(), e);
+		} finally {
+			if (jedis != null) {
+				jedis.close();
+			}
+		}
+	}
+
+	/**
+	 * 反复尝试直到获得、超时或中断
+	 *
+	 * @param attempt 一次尝试
+	 * @param waitMillis 最长等待时间，小于0表示一直等待，0表示只尝试一次
+	 * @param interruptibly 是否响应中断
+	 * @return 是否获得
+	 * @throws InterruptedException
+	 */
+	boolean acquire(Attempt attempt, long waitMillis, boolean interruptibly) throws InterruptedException {
+		Long ttl = attempt.tryAcquire();
+		if (ttl == null) {
+			return true;
+		} else if (waitMillis == 0) {
+			return false;
+		}
+
+		long deadline = waitMillis < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + waitMillis;
+		boolean interrupted = false;
+		try {
+			this.subscribe();
+			while (true) {
+				// 先取代数再尝试，尝试后到达的释放消息会使等待立即返回
+				long observed = this.getGeneration();
+				ttl = attempt.tryAcquire();
+				if (ttl == null) {
+					return true;
+				}
+
+				long remain = deadline - System.currentTimeMillis();
+				if (remain <= 0) {
+					return false;
+				}
+
+				// 最多等到当前持有者租约到期，避免释放消息丢失时一直等待
+				long wait = ttl <= 0 ? Math.min(remain, 100) : Math.min(remain, ttl);
+				try {
+					this.awaitRelease(observed, wait);
+				} catch (InterruptedException e) {
+					if (interruptibly) {
+						throw e;
+					}
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 按1/3租约周期续约，续约失败(租约已丢失)时停止
+	 *
+	 * @param token 持有标识
+	 * @param renewal 续约
+	 */
+	void startWatchdog(final String token, final Renewal renewal) {
+		long period = Math.max(1, lease / 3);
+		ScheduledFuture<?> watchdog = watchdogExecutor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					if (!renewal.renew()) {
+						logger.warn("The mlock[{}] of token[{}] has been lost, stop renew.", key, token);
+						stopWatchdog(token);
+					}
+				} catch (Throwable t) { // 防御性容错，等待下次续约
+					logger.error("Failed to renew mlock " + key + ", cause: " + t.getMessage(), t);
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		ScheduledFuture<?> old = watchdogs.put(token, watchdog);
+		if (old != null) {
+			old.cancel(false);
+		}
+	}
+
+	void stopWatchdog(String token) {
+		ScheduledFuture<?> watchdog = watchdogs.remove(token);
+		if (watchdog != null) {
+			watchdog.cancel(false);
+		}
+	}
+
+	/**
+	 * 首次发生竞争时订阅释放消息，并等待订阅生效后再返回，避免漏掉订阅前的释放消息
+	 */
+	private void subscribe() {
+		Subscriber current = subscriber;
+		if (current == null) {
+			synchronized (this) {
+				current = subscriber;
+				if (current == null) {
+					subscriber = current = new Subscriber();
+					current.start();
+				}
+			}
+		}
+
+		try {
+			current.subscribed.await(reconnectPeriod, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private long getGeneration() {
+		synchronized (released) {
+			return generation;
+		}
+	}
+
+	/**
+	 * 等待代数变化或超时
+	 *
+	 * @param observed 尝试前的代数
+	 * @param waitMillis 最长等待时间
+	 * @throws InterruptedException
+	 */
+	private void awaitRelease(long observed, long waitMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + waitMillis;
+		synchronized (released) {
+			while (generation == observed) {
+				long remain = deadline - System.currentTimeMillis();
+				if (remain <= 0) {
+					return;
+				}
+				released.wait(remain);
+			}
+		}
+	}
+
+	/**
+	 * 唤醒本地所有等待者重新尝试，读锁和信号量的一次释放可能满足多个等待者
+	 */
+	private void wakeup() {
+		synchronized (released) {
+			generation++;
+			released.notifyAll();
+		}
+	}
+
+	/**
+	 * 关闭，调用前应先释放仍持有的锁
+	 */
+	void destroy() {
+		for (Map.Entry<String, ScheduledFuture<?>> entry : watchdogs.entrySet()) {
+			entry.getValue().cancel(false);
+		}
+		watchdogs.clear();
+
+		try {
+			watchdogExecutor.shutdown();
+		} catch (Throwable t) {
+			logger.warn(t.getMessage(), t);
+		}
+		if (subscriber != null) {
+			subscriber.shutdown();
+		}
+		jedisPool.destroy();
+	}
+
+	/**
+	 * 一次获取尝试
+	 */
+	interface Attempt {
+
+		/**
+		 * @return null表示获得，否则为建议等待时间(ms)
+		 */
+		Long tryAcquire();
+
+	}
+
+	/**
+	 * 一次续约
+	 */
+	interface Renewal {
+
+		/**
+		 * @return false表示租约已丢失
+		 */
+		boolean renew();
+
+	}
+
+	private class Subscriber extends Thread {
+
+		private final CountDownLatch subscribed = new CountDownLatch(1);
+		private volatile Jedis jedis;
+		private volatile boolean running = true;
+
+		public Subscriber() {
+			super.setDaemon(true);
+			super.setName("RedisMlockSubscribe");
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					jedis = jedisPool.getResource();
+					try {
+						jedis.subscribe(new JedisPubSub() {
+							@Override
+							public void onMessage(String channel, String message) {
+								if (RELEASE_MESSAGE.equals(message)) {
+									wakeup();
+								}
+							}
+
+							@Override
+							public void onSubscribe(String channel, int num) {
+								subscribed.countDown();
+								// 订阅期间可能错过释放消息，唤醒等待者重新尝试
+								wakeup();
+							}
+						}, key); // 阻塞
+					} finally {
+						jedis.close();
+					}
+				} catch (Throwable t) {
+					if (running) {
+						logger.warn("Failed to subscribe mlock " + key + " from redis " + nurl.getAddress() + ", cause: " + t.getMessage(), t);
+						try {
+							sleep(reconnectPeriod);
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}
+		}
+
+		public void shutdown() {
+			try {
+				running = false;
+				if (jedis != null) {
+					jedis.disconnect();
+				}
+			} catch (Throwable t) {
+				logger.warn(t.getMessage(), t);
+			}
+		}
+
+	}
+
+}
@@ -236,6 +236,7 @@ public class RedisMconf extends AbstractMconf {
 		if (retryExecutor != null) {
 			retryExecutor.shutdown();
 		}
+		super.shutdownAsync();
 		if (jedisPool != null) {
 			jedisPool.destroy();
 		}
@@ -0,0 +1,107 @@
+package io.coon.redis;
+
+import io.coon.redis.RedisLockContext.Attempt;
+import io.coon.redis.RedisLockContext.Renewal;
+import io.coon.support.mlock.AbstractMlock;
+import io.neural.NURL;
+import io.neural.extension.Extension;
+import io.neural.micro.ConcurrentHashSet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The base of Redis Mlock.<br>
+ * <br>
+ * 1. 锁Key=/[group]/[lock]，Value=持有者标识，带PX租约，持有期间由看门狗按1/3租约周期续约。<br>
+ * 2. 加锁、解锁、续约均为Lua脚本原子操作，解锁时校验持有者标识。<br>
+ * 3. 解锁时在锁Key上发布消息，等待者通过订阅被唤醒，而非轮询SETNX。<br>
+ *
+ * @author lry
+ */
+@Extension("redis")
+public class RedisMlock extends AbstractMlock {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisMlock.class);
+
+	// 加锁成功返回nil，否则返回锁剩余存活时间
+	private static final RedisScript LOCK_SCRIPT = new RedisScript(
+			"if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return nil end " +
+			"return redis.call('pttl', KEYS[1])");
+	private static final RedisScript UNLOCK_SCRIPT = new RedisScript(
+			"if redis.call('get', KEYS[1]) == ARGV[1] then " +
+			"redis.call('del', KEYS[1]) redis.call('publish', KEYS[1], ARGV[2]) return 1 end " +
+			"return 0");
+	private static final RedisScript RENEW_SCRIPT = new RedisScript(
+			"if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end " +
+			"return 0");
+
+	private RedisLockContext context;
+	private List<String> keys;
+	private final Set<String> owners = new ConcurrentHashSet<String>();
+
+	@Override
+	public void connect(NURL nurl) {
+		super.connect(nurl);
+		this.context = new RedisLockContext(nurl, name);
+		this.keys = Collections.singletonList(context.getKey());
+	}
+
+	@Override
+	public boolean available() {
+		return context != null && context.isAvailable();
+	}
+
+	@Override
+	protected boolean doLock(final String owner, long waitMillis, boolean interruptibly) throws InterruptedException {
+		final List<String> args = Arrays.asList(owner, String.valueOf(context.getLease()));
+		return context.acquire(new Attempt() {
+			@Override
+			public Long tryAcquire() {
+				Object ttl = context.eval(LOCK_SCRIPT, keys, args);
+				if (ttl == null) {
+					owners.add(owner);
+					context.startWatchdog(owner, new Renewal() {
+						@Override
+						public boolean renew() {
+							return Long.valueOf(1).equals(context.eval(RENEW_SCRIPT, keys, args));
+						}
+					});
+					return null;
+				}
+
+				return (Long) ttl;
+			}
+		}, waitMillis, interruptibly);
+	}
+
+	@Override
+	protected void doUnlock(String owner) {
+		owners.remove(owner);
+		context.stopWatchdog(owner);
+		Object result = context.eval(UNLOCK_SCRIPT, keys, Arrays.asList(owner, RedisLockContext.RELEASE_MESSAGE));
+		if (!Long.valueOf(1).equals(result)) {
+			logger.warn("The mlock[{}] lease of owner[{}] has expired before unlock.", context.getKey(), owner);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		for (String owner : owners) {
+			try {
+				context.stopWatchdog(owner);
+				context.eval(UNLOCK_SCRIPT, keys, Arrays.asList(owner, RedisLockContext.RELEASE_MESSAGE));
+			} catch (Throwable t) {
+				logger.warn("Failed to release mlock " + context.getKey() + " on destroy, cause: " + t.getMessage(), t);
+			}
+		}
+		owners.clear();
+		context.destroy();
+	}
+
+}
@@ -0,0 +1,212 @@
+package io.coon.redis;
+
+import io.coon.redis.RedisLockContext.Attempt;
+import io.coon.redis.RedisLockContext.Renewal;
+import io.coon.support.mlock.AbstractMreadWriteLock;
+import io.neural.NURL;
+import io.neural.extension.Extension;
+import io.neural.micro.ConcurrentHashSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The base of Redis MreadWriteLock.<br>
+ * <br>
+ * 1. 写锁Key=/[group]/[lock]:write，Value=持有者标识，带PX租约。<br>
+ * 2. 读锁Key=/[group]/[lock]:read，为ZSET(持有者标识 -> 租约到期时间)，获取和检查时清理已到期的读者；到期时间按Redis服务器时间计算。<br>
+ * 3. 写锁因读者等待时设置/[group]/[lock]:wait标记，新的读锁需等待该标记消失，避免写锁饥饿。<br>
+ * 4. 读写锁均由看门狗续约，释放时在/[group]/[lock]上发布消息唤醒等待者。<br>
+ *
+ * @author lry
+ */
+@Extension("redis")
+public class RedisMreadWriteLock extends AbstractMreadWriteLock {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisMreadWriteLock.class);
+
+	// KEYS=[write, read, wait]，ARGV=[owner, lease]，获得返回nil，否则返回建议等待时间
+	private static final RedisScript READ_LOCK_SCRIPT = new RedisScript(RedisLockContext.SERVER_NOW +
+			"local w = redis.call('get', KEYS[1]) " +
+			"if w and w ~= ARGV[1] then return redis.call('pttl', KEYS[1]) end " +
+			"if not w then local ww = redis.call('get', KEYS[3]) " +
+			"if ww and ww ~= ARGV[1] then return redis.call('pttl', KEYS[3]) end end " +
+			"redis.call('zadd', KEYS[2], now + ARGV[2], ARGV[1]) " +
+			"redis.call('pexpire', KEYS[2], ARGV[2]) " +
+			"return nil");
+	private static final RedisScript WRITE_LOCK_SCRIPT = new RedisScript(RedisLockContext.SERVER_NOW +
+			"if redis.call('exists', KEYS[1]) == 1 then return redis.call('pttl', KEYS[1]) end " +
+			"redis.call('zremrangebyscore', KEYS[2], '-inf', now) " +
+			"local r = redis.call('zrevrange', KEYS[2], 0, 0, 'WITHSCORES') " +
+			"if r[1] then redis.call('set', KEYS[3], ARGV[1], 'PX', ARGV[2]) return r[2] - now end " +
+			"redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+			"if redis.call('get', KEYS[3]) == ARGV[1] then redis.call('del', KEYS[3]) end " +
+			"return nil");
+	// KEYS=[read, channel]，ARGV=[owner, message]，最后一个读者释放时才发布
+	private static final RedisScript READ_UNLOCK_SCRIPT = new RedisScript(RedisLockContext.SERVER_NOW +
+			"if redis.call('zrem', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+			"redis.call('zremrangebyscore', KEYS[1], '-inf', now) " +
+			"if redis.call('zcard', KEYS[1]) == 0 then redis.call('publish', KEYS[2], ARGV[2]) end " +
+			"return 1");
+	// KEYS=[write或wait, channel]，ARGV=[owner, message]
+	private static final RedisScript DELETE_SCRIPT = new RedisScript(
+			"if redis.call('get', KEYS[1]) == ARGV[1] then " +
+			"redis.call('del', KEYS[1]) redis.call('publish', KEYS[2], ARGV[2]) return 1 end " +
+			"return 0");
+	// KEYS=[read]，ARGV=[owner, lease]
+	private static final RedisScript READ_RENEW_SCRIPT = new RedisScript(RedisLockContext.SERVER_NOW +
+			"if redis.call('zscore', KEYS[1], ARGV[1]) then " +
+			"redis.call('zadd', KEYS[1], now + ARGV[2], ARGV[1]) redis.call('pexpire', KEYS[1], ARGV[2]) return 1 end " +
+			"return 0");
+	// KEYS=[write]，ARGV=[owner, lease]
+	private static final RedisScript WRITE_RENEW_SCRIPT = new RedisScript(
+			"if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end " +
+			"return 0");
+
+	private RedisLockContext context;
+	private String writeKey;
+	private String readKey;
+	private String waitKey;
+
+	@Override
+	public void connect(NURL nurl) {
+		super.connect(nurl);
+		this.context = new RedisLockContext(nurl, name);
+		this.writeKey = context.getKey() + ":write";
+		this.readKey = context.getKey() + ":read";
+		this.waitKey = context.getKey() + ":wait";
+		super.setLocks(new ReadLock(), new WriteLock());
+	}
+
+	@Override
+	public boolean available() {
+		return context != null && context.isAvailable();
+	}
+
+	@Override
+	public void destroy() {
+		((RedisLockView) readLock()).releaseAll();
+		((RedisLockView) writeLock()).releaseAll();
+		context.destroy();
+	}
+
+	private class ReadLock extends RedisLockView {
+
+		@Override
+		protected boolean doLock(final String owner, long waitMillis, boolean interruptibly) throws InterruptedException {
+			final String lease = String.valueOf(context.getLease());
+			return context.acquire(new Attempt() {
+				@Override
+				public Long tryAcquire() {
+					Object ttl = context.eval(READ_LOCK_SCRIPT, Arrays.asList(writeKey, readKey, waitKey), Arrays.asList(owner, lease));
+					if (ttl == null) {
+						hold(owner, new Renewal() {
+							@Override
+							public boolean renew() {
+								return Long.valueOf(1).equals(context.eval(READ_RENEW_SCRIPT, Arrays.asList(readKey), Arrays.asList(owner, lease)));
+							}
+						});
+						return null;
+					}
+
+					return (Long) ttl;
+				}
+			}, waitMillis, interruptibly);
+		}
+
+		@Override
+		protected boolean release(String owner) {
+			return Long.valueOf(1).equals(context.eval(READ_UNLOCK_SCRIPT, Arrays.asList(readKey, context.getKey()),
+					Arrays.asList(owner, RedisLockContext.RELEASE_MESSAGE)));
+		}
+
+	}
+
+	private class WriteLock extends RedisLockView {
+
+		@Override
+		protected boolean doLock(final String owner, long waitMillis, boolean interruptibly) throws InterruptedException {
+			final String lease = String.valueOf(context.getLease());
+			boolean acquired = context.acquire(new Attempt() {
+				@Override
+				public Long tryAcquire() {
+					Object ttl = context.eval(WRITE_LOCK_SCRIPT, Arrays.asList(writeKey, readKey, waitKey), Arrays.asList(owner, lease));
+					if (ttl == null) {
+						hold(owner, new Renewal() {
+							@Override
+							public boolean renew() {
+								return Long.valueOf(1).equals(context.eval(WRITE_RENEW_SCRIPT, Arrays.asList(writeKey), Arrays.asList(owner, lease)));
+							}
+						});
+						return null;
+					}
+
+					return (Long) ttl;
+				}
+			}, waitMillis, interruptibly);
+
+			if (!acquired) {
+				// 放弃等待时撤销写等待标记，让被挡住的读者继续
+				context.eval(DELETE_SCRIPT, Arrays.asList(waitKey, context.getKey()), Arrays.asList(owner, RedisLockContext.RELEASE_MESSAGE));
+			}
+			return acquired;
+		}
+
+		@Override
+		protected boolean release(String owner) {
+			return Long.valueOf(1).equals(context.eval(DELETE_SCRIPT, Arrays.asList(writeKey, context.getKey()),
+					Arrays.asList(owner, RedisLockContext.RELEASE_MESSAGE)));
+		}
+
+	}
+
+	private abstract class RedisLockView extends LockView {
+
+		private final Set<String> owners = new ConcurrentHashSet<String>();
+
+		protected void hold(String owner, Renewal renewal) {
+			owners.add(owner);
+			context.startWatchdog(this.toToken(owner), renewal);
+		}
+
+		@Override
+		protected void doUnlock(String owner) {
+			owners.remove(owner);
+			context.stopWatchdog(this.toToken(owner));
+			if (!this.release(owner)) {
+				logger.warn("The mlock[{}] lease of owner[{}] has expired before unlock.", context.getKey(), owner);
+			}
+		}
+
+		void releaseAll() {
+			for (String owner : owners) {
+				try {
+					context.stopWatchdog(this.toToken(owner));
+					this.release(owner);
+				} catch (Throwable t) {
+					logger.warn("Failed to release mlock " + context.getKey() + " on destroy, cause: " + t.getMessage(), t);
+				}
+			}
+			owners.clear();
+		}
+
+		// 读锁和写锁共用持有者标识，看门狗需按锁类型区分
+		private String toToken(String owner) {
+			return this.getClass().getSimpleName() + ":" + owner;
+		}
+
+		/**
+		 * 远程释放
+		 *
+		 * @param owner
+		 * @return 释放前是否仍持有
+		 */
+		protected abstract boolean release(String owner);
+
+	}
+
+}
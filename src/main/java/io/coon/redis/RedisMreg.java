@@ -3,18 +3,22 @@ package io.coon.redis;
 import io.coon.support.Consts;
 import io.coon.support.CoonListener;
 import io.coon.support.NamedThreadFactory;
+import io.coon.support.StripedExecutor;
 import io.coon.support.mreg.FailbackMreg;
-import io.coon.support.mreg.MregCommon;
+import io.coon.support.mreg.NurlMatcher;
 import io.coon.support.mreg.exception.MregException;
 import io.neural.NURL;
 import io.neural.extension.Extension;
+import io.neural.micro.ConcurrentHashSet;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -34,6 +38,10 @@ import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 @Extension("redis")
@@ -42,14 +50,74 @@ public class RedisMreg extends FailbackMreg {
 	private static final Logger logger = LoggerFactory.getLogger(RedisMreg.class);
 
     private String root;
+    // 分类Key索引集合，避免KEYS扫描
+    private String indexKey;
+    // 分类过期时间有序集合的根路径
+    private String expireRoot;
+    // 分类事件序号的根路径
+    private String seqRoot;
     private boolean replicate;
     private int expirePeriod;
     private int reconnectPeriod;
+    private boolean pipelineHeartbeat;
+    private int heartbeatBatch;
     private volatile boolean admin = false;
     private final static String DEFAULT_ROOT = "ms";
-	private static final int DEFAULT_REDIS_PORT = 6379;
+    private final static String INDEX_SUFFIX = ".index";
+    private final static String EXPIRE_SUFFIX = ".expire";
+    private final static String SEQ_SUFFIX = ".seq";
+    // 增量事件：[register|unregister] [seq] [nurl]
+    private final static String EVENT_SEPARATOR = " ";
+    // 非动态数据不过期
+    private final static String NEVER_EXPIRE = "+inf";
+    private final static int SCAN_COUNT = 1000;
+    // 注册并发布增量事件：KEYS=[category, index, expire, seq]，ARGV=[nurl, expire, event, deadline]
+    private static final RedisScript REGISTER_SCRIPT = new RedisScript(
+            "redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('sadd', KEYS[2], KEYS[1]) " +
+            "redis.call('zadd', KEYS[3], ARGV[4], ARGV[1]) " +
+            "local seq = redis.call('incr', KEYS[4]) " +
+            "redis.call('publish', KEYS[1], ARGV[3] .. ' ' .. seq .. ' ' .. ARGV[1]) " +
+            "return 1");
+    // 注销并发布增量事件：KEYS=[category, expire, seq]，ARGV=[nurl, event]，字段不存在时不发布
+    private static final RedisScript UNREGISTER_SCRIPT = new RedisScript(
+            "redis.call('zrem', KEYS[2], ARGV[1]) " +
+            "if redis.call('hdel', KEYS[1], ARGV[1]) == 1 then " +
+            "local seq = redis.call('incr', KEYS[3]) " +
+            "redis.call('publish', KEYS[1], ARGV[2] .. ' ' .. seq .. ' ' .. ARGV[1]) return 1 end " +
+            "return 0");
+    // 同一分类下所有动态NURL一次续期：KEYS=[category, index, expire, seq]，ARGV=[expire, event, nurl...]
+    // 有新增字段时只发布一次不带序号的事件，订阅者全量加载
+    private static final RedisScript HEARTBEAT_SCRIPT = new RedisScript(
+            "redis.call('sadd', KEYS[2], KEYS[1]) " +
+            "local created = 0 " +
+            "for i = 3, #ARGV do created = created + redis.call('hset', KEYS[1], ARGV[i], ARGV[1]) " +
+            "redis.call('zadd', KEYS[3], ARGV[1], ARGV[i]) end " +
+            "if created > 0 then redis.call('incr', KEYS[4]) redis.call('publish', KEYS[1], ARGV[2]) end " +
+            "return created");
+    // 原子读取分类快照及其序号：KEYS=[category, seq]
+    private static final RedisScript LOAD_SCRIPT = new RedisScript(
+            "return {redis.call('get', KEYS[2]) or '0', redis.call('hgetall', KEYS[1])}");
+    // 清理一个分类下的过期数据：KEYS=[category, expire, index, seq]，ARGV=[now, event]
+    // 返回已删除的NURL，过期集合不存在(旧版本写入的数据)时返回nil
+    private static final RedisScript CLEAN_SCRIPT = new RedisScript(
+            "if redis.call('exists', KEYS[2]) == 0 then " +
+            "if redis.call('exists', KEYS[1]) == 0 then redis.call('srem', KEYS[3], KEYS[1]) return {} end " +
+            "return nil end " +
+            "local expired = redis.call('zrangebyscore', KEYS[2], '-inf', '(' .. ARGV[1]) " +
+            "if #expired > 0 then " +
+            "for _, m in ipairs(expired) do redis.call('hdel', KEYS[1], m) redis.call('zrem', KEYS[2], m) end " +
+            "redis.call('incr', KEYS[4]) redis.call('publish', KEYS[1], ARGV[2]) end " +
+            "if redis.call('exists', KEYS[1]) == 0 then redis.call('srem', KEYS[3], KEYS[1]) end " +
+            "return expired");
     private final Map<String, JedisPool> jedisPools = new ConcurrentHashMap<String, JedisPool>();
-    private final ConcurrentMap<String, Notifier> notifiers = new ConcurrentHashMap<String, Notifier>();
+    // 所有订阅共用一个订阅连接，事件按服务分段串行分发
+    private volatile Notifier notifier;
+    private StripedExecutor notifyExecutor;
+    // 分类Key -> 本地快照，由增量事件修补
+    private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+    // 已用SCAN回填过索引的服务器，每个连接只回填一次
+    private final Set<JedisPool> indexedPools = new ConcurrentHashSet<JedisPool>();
     private ScheduledFuture<?> expireFuture;
     private final ScheduledExecutorService expireExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("RedisMregExpireTimer", true));
 
@@ -59,24 +127,7 @@ public class RedisMreg extends FailbackMreg {
         if (nurl.isAnyHost()) {
             throw new IllegalStateException("registry address == null");
         }
-        GenericObjectPoolConfig config = new GenericObjectPoolConfig();
-        config.setTestOnBorrow(nurl.getParameter("test.on.borrow", true));
-        config.setTestOnReturn(nurl.getParameter("test.on.return", false));
-        config.setTestWhileIdle(nurl.getParameter("test.while.idle", false));
-        if (nurl.getParameter("max.idle", 0) > 0)
-            config.setMaxIdle(nurl.getParameter("max.idle", 0));
-        if (nurl.getParameter("min.idle", 0) > 0)
-            config.setMinIdle(nurl.getParameter("min.idle", 0));
-        if (nurl.getParameter("max.total", 0) > 0)
-            config.setMaxTotal(nurl.getParameter("max.total", 0));
-        if (nurl.getParameter("max.wait.millis", nurl.getParameter("timeout", 0)) > 0)
-            config.setMaxWaitMillis(nurl.getParameter("max.wait.millis", nurl.getParameter("timeout", 0)));
-        if (nurl.getParameter("num.tests.per.eviction.run", 0) > 0)
-            config.setNumTestsPerEvictionRun(nurl.getParameter("num.tests.per.eviction.run", 0));
-        if (nurl.getParameter("time.between.eviction.runs.millis", 0) > 0)
-            config.setTimeBetweenEvictionRunsMillis(nurl.getParameter("time.between.eviction.runs.millis", 0));
-        if (nurl.getParameter("min.evictable.idle.time.millis", 0) > 0)
-            config.setMinEvictableIdleTimeMillis(nurl.getParameter("min.evictable.idle.time.millis", 0));
+        GenericObjectPoolConfig config = RedisSupport.toPoolConfig(nurl);
 
         String cluster = nurl.getParameter("cluster", "failover");
         if (! "failover".equals(cluster) && ! "replicate".equals(cluster)) {
@@ -84,34 +135,8 @@ public class RedisMreg extends FailbackMreg {
         }
         replicate = "replicate".equals(cluster);
 
-        List<String> addresses = new ArrayList<String>();
-        addresses.add(nurl.getAddress());
-        String[] backups = nurl.getParameter(Consts.BACKUP_KEY, new String[0]);
-        if (backups != null && backups.length > 0) {
-            addresses.addAll(Arrays.asList(backups));
-        }
-
-        // 增加Redis密码支持
-        String password = nurl.getPassword();
-        for (String address : addresses) {
-            int i = address.indexOf(':');
-            String host;
-            int port;
-            if (i > 0) {
-                host = address.substring(0, i);
-                port = Integer.parseInt(address.substring(i + 1));
-            } else {
-                host = address;
-                port = DEFAULT_REDIS_PORT;
-            }
-            if (MregCommon.isEmpty(password)) {
-                this.jedisPools.put(address, new JedisPool(config, host, port,
-                        nurl.getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_TIMEOUT)));
-            } else {
-                // 使用密码连接。  此处要求备用redis与主要redis使用相同的密码
-                this.jedisPools.put(address, new JedisPool(config, host, port,
-                        nurl.getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_TIMEOUT), password));
-            }
+        for (String address : RedisSupport.toAddresses(nurl)) {
+            this.jedisPools.put(address, RedisSupport.toJedisPool(config, nurl, address));
         }
 
         this.reconnectPeriod = nurl.getParameter(Consts.REGISTRY_RECONNECT_PERIOD_KEY, Consts.DEFAULT_REGISTRY_RECONNECT_PERIOD);
@@ -123,6 +148,19 @@ public class RedisMreg extends FailbackMreg {
             group = group + Consts.PATH_SEPARATOR;
         }
         this.root = group;
+        this.indexKey = group.substring(0, group.length() - 1) + INDEX_SUFFIX;
+        this.expireRoot = group.substring(0, group.length() - 1) + EXPIRE_SUFFIX;
+        this.seqRoot = group.substring(0, group.length() - 1) + SEQ_SUFFIX;
+
+        String heartbeatMode = nurl.getParameter(Consts.HEARTBEAT_MODE_KEY, Consts.HEARTBEAT_MODE_SCRIPT);
+        if (! Consts.HEARTBEAT_MODE_SCRIPT.equals(heartbeatMode) && ! Consts.HEARTBEAT_MODE_PIPELINE.equals(heartbeatMode)) {
+            throw new IllegalArgumentException("Unsupported redis heartbeat mode: " + heartbeatMode + ". The redis heartbeat mode only supported script or pipeline.");
+        }
+        this.pipelineHeartbeat = Consts.HEARTBEAT_MODE_PIPELINE.equals(heartbeatMode);
+        this.heartbeatBatch = Math.max(1, nurl.getParameter(Consts.HEARTBEAT_BATCH_KEY, Consts.DEFAULT_HEARTBEAT_BATCH));
+
+        this.notifyExecutor = new StripedExecutor("RedisMregNotify", nurl.getParameter(Consts.NOTIFY_THREADS_KEY, Consts.DEFAULT_NOTIFY_THREADS),
+                nurl.getParameter(Consts.NOTIFY_QUEUES_KEY, Consts.DEFAULT_NOTIFY_QUEUES));
 
         this.expirePeriod = nurl.getParameter(Consts.SESSION_TIMEOUT_KEY, Consts.DEFAULT_SESSION_TIMEOUT);
         this.expireFuture = expireExecutor.scheduleWithFixedDelay(new Runnable() {
@@ -137,21 +175,20 @@ public class RedisMreg extends FailbackMreg {
     }
 
     private void deferExpired() {
+        Map<String, List<String>> heartbeats = toHeartbeats();
         for (Map.Entry<String, JedisPool> entry : jedisPools.entrySet()) {
             JedisPool jedisPool = entry.getValue();
             try {
                 Jedis jedis = jedisPool.getResource();
                 try {
-                    for (NURL nurl : new HashSet<NURL>(getRegistered())) {
-                        if (nurl.getParameter(Consts.DYNAMIC_KEY, true)) {
-                            String key = toCategoryPath(nurl);
-                            if (jedis.hset(key, nurl.toFullString(), String.valueOf(System.currentTimeMillis() + expirePeriod)) == 1) {
-                                jedis.publish(key, Consts.REGISTER);
-                            }
-                        }
+                    String expire = String.valueOf(System.currentTimeMillis() + expirePeriod);
+                    if (pipelineHeartbeat) {
+                        heartbeatByPipeline(jedis, heartbeats, expire);
+                    } else {
+                        heartbeatByScript(jedis, heartbeats, expire);
                     }
                     if (admin) {
-                        clean(jedis);
+                        clean(jedisPool, jedis);
                     }
                     if (!replicate) {
                         break;//  如果服务器端已同步数据，只需写入单台机器
@@ -169,34 +206,140 @@ public class RedisMreg extends FailbackMreg {
         }
     }
 
-    // 监控中心负责删除过期脏数据
-    private void clean(Jedis jedis) {
-        Set<String> keys = jedis.keys(root + Consts.ANY_VALUE);
+    /**
+     * 每个分类按批执行一次续期脚本
+     */
+    private void heartbeatByScript(Jedis jedis, Map<String, List<String>> heartbeats, String expire) {
+        for (Map.Entry<String, List<String>> heartbeat : heartbeats.entrySet()) {
+            List<String> values = heartbeat.getValue();
+            for (int from = 0; from < values.size(); from += heartbeatBatch) {
+                List<String> batch = values.subList(from, Math.min(values.size(), from + heartbeatBatch));
+                List<String> args = new ArrayList<String>(batch.size() + 2);
+                args.add(expire);
+                args.add(Consts.REGISTER);
+                args.addAll(batch);
+                HEARTBEAT_SCRIPT.eval(jedis, Arrays.asList(heartbeat.getKey(), indexKey, toExpirePath(heartbeat.getKey()), toSeqPath(heartbeat.getKey())), args);
+            }
+        }
+    }
+
+    /**
+     * 所有HSET按批走管道，只对有新增字段的分类发布注册事件
+     */
+    private void heartbeatByPipeline(Jedis jedis, Map<String, List<String>> heartbeats, String expire) {
+        Pipeline pipeline = jedis.pipelined();
+        List<String> keys = new ArrayList<String>(heartbeatBatch);
+        List<Response<Long>> responses = new ArrayList<Response<Long>>(heartbeatBatch);
+        Set<String> created = new HashSet<String>();
+        double deadline = Double.parseDouble(expire);
+        for (Map.Entry<String, List<String>> heartbeat : heartbeats.entrySet()) {
+            String expireKey = toExpirePath(heartbeat.getKey());
+            for (String value : heartbeat.getValue()) {
+                pipeline.zadd(expireKey, deadline, value);
+                keys.add(heartbeat.getKey());
+                responses.add(pipeline.hset(heartbeat.getKey(), value, expire));
+                if (responses.size() >= heartbeatBatch) {
+                    syncHeartbeat(pipeline, keys, responses, created);
+                }
+            }
+        }
+        syncHeartbeat(pipeline, keys, responses, created);
+
+        // 顺带回填旧数据的分类索引
+        if (! heartbeats.isEmpty()) {
+            pipeline.sadd(indexKey, heartbeats.keySet().toArray(new String[heartbeats.size()]));
+        }
+        for (String key : created) {
+            pipeline.incr(toSeqPath(key));
+            pipeline.publish(key, Consts.REGISTER);
+        }
+        pipeline.sync();
+    }
+
+    private void syncHeartbeat(Pipeline pipeline, List<String> keys, List<Response<Long>> responses, Set<String> created) {
+        if (responses.isEmpty()) {
+            return;
+        }
+        pipeline.sync();
+        for (int i = 0; i < responses.size(); i++) {
+            if (Long.valueOf(1).equals(responses.get(i).get())) {
+                created.add(keys.get(i));
+            }
+        }
+        keys.clear();
+        responses.clear();
+    }
+
+    /**
+     * 按分类Key分组所有需要续期的动态NURL
+     * 
+     * @return 分类Key -> NURL全串
+     */
+    private Map<String, List<String>> toHeartbeats() {
+        Map<String, List<String>> heartbeats = new HashMap<String, List<String>>();
+        for (NURL nurl : new HashSet<NURL>(getRegistered())) {
+            if (nurl.getParameter(Consts.DYNAMIC_KEY, true)) {
+                String key = toCategoryPath(nurl);
+                List<String> values = heartbeats.get(key);
+                if (values == null) {
+                    values = new ArrayList<String>();
+                    heartbeats.put(key, values);
+                }
+                values.add(nurl.toFullString());
+            }
+        }
+        return heartbeats;
+    }
+
+    // 监控中心负责删除过期脏数据，只取出分类过期集合中已到期的成员
+    private void clean(JedisPool jedisPool, Jedis jedis) {
+        Set<String> keys = getCategoryKeys(jedisPool, jedis, root);
         if (keys != null && keys.size() > 0) {
+            String now = String.valueOf(System.currentTimeMillis());
             for (String key : keys) {
-                Map<String, String> values = jedis.hgetAll(key);
-                if (values != null && values.size() > 0) {
-                    boolean delete = false;
-                    long now = System.currentTimeMillis();
-                    for (Map.Entry<String, String> entry : values.entrySet()) {
-                    	NURL nurl = NURL.valueOf(entry.getKey());
-                        if (nurl.getParameter(Consts.DYNAMIC_KEY, true)) {
-                            long expire = Long.parseLong(entry.getValue());
-                            if (expire < now) {
-                                jedis.hdel(key, entry.getKey());
-                                delete = true;
-                                if (logger.isWarnEnabled()) {
-                                    logger.warn("Delete expired key: " + key + " -> value: " + entry.getKey() + ", expire: " + new Date(expire) + ", now: " + new Date(now));
-                                }
-                            }
-                        }
+                Object expired = CLEAN_SCRIPT.eval(jedis, Arrays.asList(key, toExpirePath(key), indexKey, toSeqPath(key)), Arrays.asList(now, Consts.UNREGISTER));
+                if (expired == null) {
+                    cleanLegacy(jedis, key);
+                } else if (logger.isWarnEnabled()) {
+                    for (Object value : (List<?>) expired) {
+                        logger.warn("Delete expired key: " + key + " -> value: " + value + ", now: " + new Date(Long.parseLong(now)));
                     }
-                    if (delete) {
-                        jedis.publish(key, Consts.UNREGISTER);
+                }
+            }
+        }
+    }
+
+    // 旧版本写入的分类没有过期集合，全量扫描一次并回填过期集合
+    private void cleanLegacy(Jedis jedis, String key) {
+        Map<String, String> values = jedis.hgetAll(key);
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+
+        boolean delete = false;
+        long now = System.currentTimeMillis();
+        String expireKey = toExpirePath(key);
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+        	NURL nurl = getNurlCache().valueOf(entry.getKey());
+            if (nurl.getParameter(Consts.DYNAMIC_KEY, true)) {
+                long expire = Long.parseLong(entry.getValue());
+                if (expire < now) {
+                    jedis.hdel(key, entry.getKey());
+                    delete = true;
+                    if (logger.isWarnEnabled()) {
+                        logger.warn("Delete expired key: " + key + " -> value: " + entry.getKey() + ", expire: " + new Date(expire) + ", now: " + new Date(now));
                     }
+                } else {
+                    jedis.zadd(expireKey, expire, entry.getKey());
                 }
+            } else {
+                jedis.zadd(expireKey, Double.POSITIVE_INFINITY, entry.getKey());
             }
         }
+        if (delete) {
+            jedis.incr(toSeqPath(key));
+            jedis.publish(key, Consts.UNREGISTER);
+        }
     }
 
     @Override
@@ -227,9 +370,10 @@ public class RedisMreg extends FailbackMreg {
             logger.warn(t.getMessage(), t);
         }
         try {
-            for (Notifier notifier : notifiers.values()) {
+            if (notifier != null) {
                 notifier.shutdown();
             }
+            notifyExecutor.shutdown();
         } catch (Throwable t) {
             logger.warn(t.getMessage(), t);
         }
@@ -245,8 +389,6 @@ public class RedisMreg extends FailbackMreg {
 
     @Override
     public void doRegister(NURL nurl) {
-        String key = toCategoryPath(nurl);
-        String value = nurl.toFullString();
         String expire = String.valueOf(System.currentTimeMillis() + expirePeriod);
         boolean success = false;
         MregException exception = null;
@@ -255,8 +397,7 @@ public class RedisMreg extends FailbackMreg {
             try {
                 Jedis jedis = jedisPool.getResource();
                 try {
-                    jedis.hset(key, value, expire);
-                    jedis.publish(key, Consts.REGISTER);
+                    REGISTER_SCRIPT.eval(jedis, toRegisterKeys(nurl), toRegisterArgs(nurl, expire));
                     success = true;
                     if (! replicate) {
                         break; //  如果服务器端已同步数据，只需写入单台机器
@@ -281,6 +422,79 @@ public class RedisMreg extends FailbackMreg {
         }
     }
 
+    /**
+     * 每台服务器按批走管道执行注册脚本
+     */
+    @Override
+    protected Map<NURL, Exception> doRegisterAll(List<NURL> nurls) {
+        String expire = String.valueOf(System.currentTimeMillis() + expirePeriod);
+        Set<NURL> succeeded = new HashSet<NURL>();
+        Map<NURL, Exception> failures = new LinkedHashMap<NURL, Exception>();
+        for (Map.Entry<String, JedisPool> entry : jedisPools.entrySet()) {
+            List<NURL> pending = new ArrayList<NURL>();
+            for (NURL nurl : nurls) {
+                if (replicate || ! succeeded.contains(nurl)) {
+                    pending.add(nurl);
+                }
+            }
+            if (pending.isEmpty()) {
+                break; //  如果服务器端已同步数据，只需写入单台机器
+            }
+            
+            JedisPool jedisPool = entry.getValue();
+            try {
+                Jedis jedis = jedisPool.getResource();
+                try {
+                    REGISTER_SCRIPT.load(jedis);
+                    for (int from = 0; from < pending.size(); from += heartbeatBatch) {
+                        List<NURL> batch = pending.subList(from, Math.min(pending.size(), from + heartbeatBatch));
+                        Pipeline pipeline = jedis.pipelined();
+                        List<Response<Object>> responses = new ArrayList<Response<Object>>(batch.size());
+                        for (NURL nurl : batch) {
+                            responses.add(pipeline.evalsha(REGISTER_SCRIPT.getSha(), toRegisterKeys(nurl), toRegisterArgs(nurl, expire)));
+                        }
+                        pipeline.sync();
+                        for (int i = 0; i < batch.size(); i++) {
+                            try {
+                                responses.get(i).get();
+                                succeeded.add(batch.get(i));
+                            } catch (Exception e) {
+                                failures.put(batch.get(i), new MregException("Failed to register service to redis registry. registry: " + entry.getKey() + ", service: " + batch.get(i) + ", cause: " + e.getMessage(), e));
+                            }
+                        }
+                    }
+                } finally {
+                    jedis.close();
+                }
+            } catch (Throwable t) {
+                for (NURL nurl : pending) {
+                    if (! succeeded.contains(nurl)) {
+                        failures.put(nurl, new MregException("Failed to register service to redis registry. registry: " + entry.getKey() + ", service: " + nurl + ", cause: " + t.getMessage(), t));
+                    }
+                }
+            }
+        }
+        
+        // 至少一台服务器写入成功即可
+        for (NURL nurl : succeeded) {
+            Exception e = failures.remove(nurl);
+            if (e != null) {
+                logger.warn(e.getMessage(), e);
+            }
+        }
+        return failures;
+    }
+
+    private List<String> toRegisterKeys(NURL nurl) {
+        String key = toCategoryPath(nurl);
+        return Arrays.asList(key, indexKey, toExpirePath(key), toSeqPath(key));
+    }
+
+    private List<String> toRegisterArgs(NURL nurl, String expire) {
+        String deadline = nurl.getParameter(Consts.DYNAMIC_KEY, true) ? expire : NEVER_EXPIRE;
+        return Arrays.asList(nurl.toFullString(), expire, Consts.REGISTER, deadline);
+    }
+
     @Override
     public void doUnregister(NURL nurl) {
         String key = toCategoryPath(nurl);
@@ -292,8 +506,7 @@ public class RedisMreg extends FailbackMreg {
             try {
                 Jedis jedis = jedisPool.getResource();
                 try {
-                    jedis.hdel(key, value);
-                    jedis.publish(key, Consts.UNREGISTER);
+                    UNREGISTER_SCRIPT.eval(jedis, Arrays.asList(key, toExpirePath(key), toSeqPath(key)), Arrays.asList(value, Consts.UNREGISTER));
                     success = true;
                     if (! replicate) {
                         break; //  如果服务器端已同步数据，只需写入单台机器
@@ -321,15 +534,7 @@ public class RedisMreg extends FailbackMreg {
     @Override
     public void doSubscribe(final NURL nurl, final CoonListener<NURL> listener) {
         String service = toServicePath(nurl);
-        Notifier notifier = notifiers.get(service);
-        if (notifier == null) {
-            Notifier newNotifier = new Notifier(service);
-            notifiers.putIfAbsent(service, newNotifier);
-            notifier = notifiers.get(service);
-            if (notifier == newNotifier) {
-                notifier.start();
-            }
-        }
+        getNotifier().subscribe(toPattern(service));
         boolean success = false;
         MregException exception = null;
         for (Map.Entry<String, JedisPool> entry : jedisPools.entrySet()) {
@@ -339,7 +544,7 @@ public class RedisMreg extends FailbackMreg {
                 try {
                     if (service.endsWith(Consts.ANY_VALUE)) {
                         admin = true;
-                        Set<String> keys = jedis.keys(service);
+                        Set<String> keys = getCategoryKeys(jedisPool, jedis, root);
                         if (keys != null && keys.size() > 0) {
                             Map<String, Set<String>> serviceKeys = new HashMap<String, Set<String>>();
                             for (String key : keys) {
@@ -352,11 +557,11 @@ public class RedisMreg extends FailbackMreg {
                                 sk.add(key);
                             }
                             for (Set<String> sk : serviceKeys.values()) {
-                                doNotify(jedis, sk, nurl, Arrays.asList(listener));
+                                doNotify(jedisPool, jedis, sk, nurl, Arrays.asList(listener));
                             }
                         }
                     } else {
-                        doNotify(jedis, jedis.keys(service + Consts.PATH_SEPARATOR + Consts.ANY_VALUE), nurl, Arrays.asList(listener));
+                        doNotify(jedisPool, jedis, getCategoryKeys(jedisPool, jedis, nurl), nurl, Arrays.asList(listener));
                     }
                     success = true;
                     break; // 只需读一个服务器的数据
@@ -382,23 +587,76 @@ public class RedisMreg extends FailbackMreg {
 
     @Override
     public void doUnsubscribe(NURL nurl, CoonListener<NURL> listener) {
+        Notifier current = notifier;
+        if (current == null) {
+            return;
+        }
+
+        // 同一服务已没有任何监听器时才取消订阅
+        String service = toServicePath(nurl);
+        for (Map.Entry<NURL, Set<CoonListener<NURL>>> entry : getSubscribed().entrySet()) {
+            if (! entry.getValue().isEmpty() && service.equals(toServicePath(entry.getKey()))) {
+                return;
+            }
+        }
+        current.unsubscribe(toPattern(service));
+    }
+
+    private Notifier getNotifier() {
+        Notifier current = notifier;
+        if (current == null) {
+            synchronized (this) {
+                current = notifier;
+                if (current == null) {
+                    notifier = current = new Notifier();
+                    current.start();
+                }
+            }
+        }
+        return current;
+    }
+
+    // 通配订阅/[group]/*，服务订阅/[group]/[interface]/*
+    private String toPattern(String service) {
+        return service.endsWith(Consts.ANY_VALUE) ? service : service + Consts.PATH_SEPARATOR + Consts.ANY_VALUE;
+    }
+
+    private void handleEvent(JedisPool jedisPool, String key, String msg) {
+        try {
+            Jedis jedis = jedisPool.getResource();
+            try {
+                if (! applyDelta(jedisPool, key, msg)) {
+                    reload(jedisPool, jedis, key);
+                }
+                doNotify(jedisPool, jedis, key);
+            } catch (JedisConnectionException e){
+            	logger.error("Jedis Connection Exception", e);
+            } finally {
+            	if(jedis != null){
+                	jedis.close();
+                }
+            }
+        } catch (Throwable t) { // TODO 通知失败没有恢复机制保障
+            logger.error(t.getMessage(), t);
+        }
     }
 
-    private void doNotify(Jedis jedis, String key) {
+    private void doNotify(JedisPool source, Jedis jedis, String key) {
         for (Map.Entry<NURL, Set<CoonListener<NURL>>> entry : new HashMap<NURL, Set<CoonListener<NURL>>>(getSubscribed()).entrySet()) {
-            doNotify(jedis, Arrays.asList(key), entry.getKey(), new HashSet<CoonListener<NURL>>(entry.getValue()));
+            doNotify(source, jedis, Arrays.asList(key), entry.getKey(), new HashSet<CoonListener<NURL>>(entry.getValue()));
         }
     }
 
-    private void doNotify(Jedis jedis, Collection<String> keys, NURL nurl, Collection<CoonListener<NURL>> listeners) {
+    private void doNotify(JedisPool source, Jedis jedis, Collection<String> keys, NURL nurl, Collection<CoonListener<NURL>> listeners) {
         if (keys == null || keys.size() == 0
                 || listeners == null || listeners.size() == 0) {
             return;
         }
-        long now = System.currentTimeMillis();
         List<NURL> result = new ArrayList<NURL>();
         List<String> categories = Arrays.asList(nurl.getParameter(Consts.CATEGORY_KEY, new String[0]));
         String consumerService = nurl.getServiceInterface();
+        NurlMatcher matcher = getMatcher(nurl);
+        long now = System.currentTimeMillis();
         for (String key : keys) {
             if (! Consts.ANY_VALUE.equals(consumerService)) {
                 String prvoiderService = toServiceName(key);
@@ -411,16 +669,9 @@ public class RedisMreg extends FailbackMreg {
                 continue;
             }
             List<NURL> nurls = new ArrayList<NURL>();
-            Map<String, String> values = jedis.hgetAll(key);
-            if (values != null && values.size() > 0) {
-                for (Map.Entry<String, String> entry : values.entrySet()) {
-                	NURL u = NURL.valueOf(entry.getKey());
-                    if (! u.getParameter(Consts.DYNAMIC_KEY, true)
-                            || Long.parseLong(entry.getValue()) >= now) {
-                        if (MregCommon.isMatch(nurl, u)) {
-                            nurls.add(u);
-                        }
-                    }
+            for (NURL u : getSnapshot(source, jedis, key, now).getNurls(now)) {
+                if (matcher.isMatch(u)) {
+                    nurls.add(u);
                 }
             }
             if (nurls.isEmpty()) {
@@ -442,6 +693,149 @@ public class RedisMreg extends FailbackMreg {
         }
     }
 
+    /**
+     * 获取指定服务订阅的分类Key：指定了分类时直接检查分类Key是否存在，否则读取索引
+     */
+    private Set<String> getCategoryKeys(JedisPool jedisPool, Jedis jedis, NURL nurl) {
+        String[] categories = nurl.getParameter(Consts.CATEGORY_KEY, new String[0]);
+        if (categories.length == 0 || Arrays.asList(categories).contains(Consts.ANY_VALUE)) {
+            return getCategoryKeys(jedisPool, jedis, toServicePath(nurl) + Consts.PATH_SEPARATOR);
+        }
+
+        Set<String> keys = new HashSet<String>();
+        for (String category : categories) {
+            String key = toServicePath(nurl) + Consts.PATH_SEPARATOR + category;
+            if (Boolean.TRUE.equals(jedis.exists(key))) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 用SSCAN从索引集合分批读取指定前缀的分类Key<br>
+     * 每个连接第一次读取前用SCAN回填一次索引，滚动升级期间旧版本写入的分类不会因索引已存在而丢失
+     */
+    private Set<String> getCategoryKeys(JedisPool jedisPool, Jedis jedis, String prefix) {
+        if (! indexedPools.contains(jedisPool)) {
+            backfillIndex(jedis);
+            indexedPools.add(jedisPool);
+        }
+
+        Set<String> keys = new HashSet<String>();
+        ScanParams params = new ScanParams().match(toGlob(prefix) + Consts.ANY_VALUE).count(SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.sscan(indexKey, cursor, params);
+            keys.addAll(result.getResult());
+            cursor = result.getStringCursor();
+        } while (! ScanParams.SCAN_POINTER_START.equals(cursor));
+        return keys;
+    }
+
+    // 用SCAN游标分批扫描所有分类Key并回填索引
+    private void backfillIndex(Jedis jedis) {
+        ScanParams params = new ScanParams().match(toGlob(root) + Consts.ANY_VALUE).count(SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            List<String> members = result.getResult();
+            if (members != null && ! members.isEmpty()) {
+                jedis.sadd(indexKey, members.toArray(new String[members.size()]));
+            }
+            cursor = result.getStringCursor();
+        } while (! ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    // 转义glob通配符，前缀按字面匹配
+    private static String toGlob(String prefix) {
+        StringBuilder glob = new StringBuilder(prefix.length() + 8);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                glob.append('\\');
+            }
+            glob.append(c);
+        }
+        return glob.toString();
+    }
+
+    private Snapshot getSnapshot(JedisPool source, Jedis jedis, String key, long now) {
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null || snapshot.isExpired(now)) {
+            // 续期不发布事件，过期后重新加载以取得最新的过期时间并剔除未续期的数据
+            return reload(source, jedis, key);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 全量加载分类快照，过滤已过期的动态数据
+     * 
+     * @param source 快照来源，各服务器的事件序号互相独立，只有同一来源的事件才能增量修补
+     */
+    private Snapshot reload(JedisPool source, Jedis jedis, String key) {
+        List<?> result = (List<?>) LOAD_SCRIPT.eval(jedis, Arrays.asList(key, toSeqPath(key)), Collections.<String>emptyList());
+        Snapshot snapshot = new Snapshot(source, Long.parseLong(String.valueOf(result.get(0))));
+        List<?> values = (List<?>) result.get(1);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i + 1 < values.size(); i += 2) {
+            String value = String.valueOf(values.get(i));
+            NURL u = getNurlCache().valueOf(value);
+            if (! u.getParameter(Consts.DYNAMIC_KEY, true)) {
+                snapshot.put(value, u, Long.MAX_VALUE);
+            } else {
+                long deadline = Long.parseLong(String.valueOf(values.get(i + 1)));
+                if (deadline >= now) {
+                    snapshot.put(value, u, deadline);
+                }
+            }
+        }
+        snapshots.put(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 按增量事件修补本地快照
+     * 
+     * @return false表示无法增量修补(旧版本事件、本地无快照或序号不连续)，需要全量加载
+     */
+    private boolean applyDelta(JedisPool source, String key, String msg) {
+        String[] parts = msg.split(EVENT_SEPARATOR, 3);
+        if (parts.length != 3) {
+            return false;
+        }
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null || snapshot.source != source) {
+            return false;
+        }
+
+        long seq;
+        try {
+            seq = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        synchronized (snapshot) {
+            if (seq <= snapshot.seq) {
+                return true; // 重复事件，或已包含在全量加载的快照中
+            } else if (seq != snapshot.seq + 1) {
+                return false;
+            }
+            if (Consts.REGISTER.equals(parts[0])) {
+                // 事件不带过期时间，动态数据按刚注册估算，到期后由全量加载取得续期后的时间
+                NURL u = getNurlCache().valueOf(parts[2]);
+                snapshot.put(parts[2], u, u.getParameter(Consts.DYNAMIC_KEY, true) ? System.currentTimeMillis() + expirePeriod : Long.MAX_VALUE);
+            } else if (Consts.UNREGISTER.equals(parts[0])) {
+                snapshot.remove(parts[2]);
+            } else {
+                return false;
+            }
+            snapshot.seq = seq;
+        }
+        return true;
+    }
+
     private String toServiceName(String categoryPath) {
         String servicePath = toServicePath(categoryPath);
         return servicePath.startsWith(root) ? servicePath.substring(root.length()) : servicePath;
@@ -462,6 +856,16 @@ public class RedisMreg extends FailbackMreg {
         return i > 0 ? categoryPath.substring(0, i) : categoryPath;
     }
 
+    // 分类过期集合：/[group].expire/[interface]/[category]，不在/[group]/*下，避免被当作分类Key
+    private String toExpirePath(String categoryPath) {
+        return expireRoot + categoryPath.substring(root.length() - 1);
+    }
+
+    // 分类事件序号：/[group].seq/[interface]/[category]
+    private String toSeqPath(String categoryPath) {
+        return seqRoot + categoryPath.substring(root.length() - 1);
+    }
+
     private String toServicePath(NURL nurl) {
         return root + nurl.getServiceInterface();
     }
@@ -470,40 +874,105 @@ public class RedisMreg extends FailbackMreg {
         return toServicePath(nurl) + Consts.PATH_SEPARATOR + nurl.getParameter(Consts.CATEGORY_KEY, Consts.DEFAULT_CATEGORY);
     }
 
+    /**
+     * 分类快照：NURL全串 -> NURL，seq为已应用的最后事件序号，deadlines为动态数据的过期时间
+     */
+    private static class Snapshot {
+
+        private final JedisPool source;
+
+        private long seq;
+
+        private final Map<String, NURL> nurls = new HashMap<String, NURL>();
+
+        private final Map<String, Long> deadlines = new HashMap<String, Long>();
+
+        private long earliest = Long.MAX_VALUE;
+
+        public Snapshot(JedisPool source, long seq) {
+            this.source = source;
+            this.seq = seq;
+        }
+
+        public synchronized void put(String value, NURL nurl, long deadline) {
+            nurls.put(value, nurl);
+            if (deadline == Long.MAX_VALUE) {
+                deadlines.remove(value);
+            } else {
+                deadlines.put(value, deadline);
+                earliest = Math.min(earliest, deadline);
+            }
+        }
+
+        public synchronized void remove(String value) {
+            nurls.remove(value);
+            deadlines.remove(value);
+        }
+
+        /**
+         * 最早的过期时间已过，移除的数据不重新计算，最多多加载一次
+         */
+        public synchronized boolean isExpired(long now) {
+            return earliest < now;
+        }
+
+        /**
+         * @return 未过期的NURL
+         */
+        public synchronized List<NURL> getNurls(long now) {
+            List<NURL> result = new ArrayList<NURL>(nurls.size());
+            for (Map.Entry<String, NURL> entry : nurls.entrySet()) {
+                Long deadline = deadlines.get(entry.getKey());
+                if (deadline == null || deadline >= now) {
+                    result.add(entry.getValue());
+                }
+            }
+            return result;
+        }
+
+    }
+
     private class NotifySub extends JedisPubSub {
 
         private final JedisPool jedisPool;
 
-        public NotifySub(JedisPool jedisPool) {
+        private final Notifier notifier;
+
+        // 建立连接时订阅的模式
+        private final Set<String> patterns = new HashSet<String>();
+
+        // 服务器已确认生效的模式，只在订阅线程内回调时读写
+        private final Set<String> confirmed = new HashSet<String>();
+
+        public NotifySub(JedisPool jedisPool, Notifier notifier) {
             this.jedisPool = jedisPool;
+            this.notifier = notifier;
         }
 
         @Override
-        public void onMessage(String key, String msg) {
+        public void onMessage(final String key, final String msg) {
             if (logger.isInfoEnabled()) {
                 logger.info("redis event: " + key + " = " + msg);
             }
-            if (msg.equals(Consts.REGISTER)
-                    || msg.equals(Consts.UNREGISTER)) {
-                try {
-                    Jedis jedis = jedisPool.getResource();
-                    try {
-                        doNotify(jedis, key);
-                    } catch (JedisConnectionException e){
-                    	logger.error("Jedis Connection Exception", e);
-                    } finally {
-                    	if(jedis != null){
-                        	jedis.close();
-                        }
+            if (msg.startsWith(Consts.REGISTER)
+                    || msg.startsWith(Consts.UNREGISTER)) {
+                // 同一服务的事件在同一线程内按序处理，不阻塞订阅连接
+                notifyExecutor.execute(toServicePath(key), new Runnable() {
+                    public void run() {
+                        handleEvent(jedisPool, key, msg);
                     }
-                } catch (Throwable t) { // TODO 通知失败没有恢复机制保障
-                    logger.error(t.getMessage(), t);
-                }
+                });
             }
         }
 
         @Override
         public void onPMessage(String pattern, String key, String msg) {
+            // 通配订阅已生效时，只处理通配模式投递的事件，避免同一事件重复处理；
+            // 通配订阅确认前仍处理服务模式的事件，否则确认前的事件会丢失
+            String any = root + Consts.ANY_VALUE;
+            if (! any.equals(pattern) && confirmed.contains(any)) {
+                return;
+            }
             onMessage(key, msg);
         }
 
@@ -513,6 +982,15 @@ public class RedisMreg extends FailbackMreg {
 
         @Override
         public void onPSubscribe(String pattern, int num) {
+            confirmed.add(pattern);
+            // (重新)订阅前可能错过事件，丢弃该模式下的快照，下次使用时全量加载
+            String prefix = pattern.endsWith(Consts.ANY_VALUE) ? pattern.substring(0, pattern.length() - 1) : pattern;
+            for (String key : snapshots.keySet()) {
+                if (key.startsWith(prefix)) {
+                    snapshots.remove(key);
+                }
+            }
+            notifier.activate(this);
         }
 
         @Override
@@ -521,17 +999,22 @@ public class RedisMreg extends FailbackMreg {
 
         @Override
         public void onPUnsubscribe(String pattern, int num) {
+            confirmed.remove(pattern);
         }
 
     }
 
+    /**
+     * 共享订阅线程：在一个连接上动态增减订阅模式，连接断开时切换到下一台服务器并重新订阅全部模式
+     */
     private class Notifier extends Thread {
 
-        private final String service;
+        private final Set<String> patterns = new ConcurrentHashSet<String>();
 
         private volatile Jedis jedis;
 
-        private volatile boolean first = true;
+        // 已生效的订阅，未生效(连接中)时为null
+        private NotifySub active;
 
         private volatile boolean running = true;
 
@@ -566,10 +1049,50 @@ public class RedisMreg extends FailbackMreg {
             return false;
         }
 
-        public Notifier(String service) {
+        public Notifier() {
             super.setDaemon(true);
             super.setName("MsRedisSubscribe");
-            this.service = service;
+        }
+
+        public synchronized void subscribe(String pattern) {
+            if (patterns.add(pattern)) {
+                if (active != null) {
+                    active.psubscribe(pattern);
+                } else {
+                    this.notifyAll();
+                }
+            }
+        }
+
+        public synchronized void unsubscribe(String pattern) {
+            if (patterns.remove(pattern) && active != null) {
+                active.punsubscribe(pattern);
+            }
+        }
+
+        /**
+         * 订阅生效时补订连接期间新增的模式
+         */
+        private synchronized void activate(NotifySub notifySub) {
+            if (active == notifySub) {
+                return;
+            }
+            active = notifySub;
+            resetSkip();
+            for (String pattern : patterns) {
+                if (! notifySub.patterns.contains(pattern)) {
+                    notifySub.psubscribe(pattern);
+                }
+            }
+        }
+
+        private synchronized NotifySub prepare(JedisPool jedisPool) throws InterruptedException {
+            while (running && patterns.isEmpty()) {
+                this.wait(reconnectPeriod);
+            }
+            NotifySub notifySub = new NotifySub(jedisPool, this);
+            notifySub.patterns.addAll(patterns);
+            return notifySub;
         }
 
         @Override
@@ -581,30 +1104,18 @@ public class RedisMreg extends FailbackMreg {
                             for (Map.Entry<String, JedisPool> entry : jedisPools.entrySet()) {
                                 JedisPool jedisPool = entry.getValue();
                                 try {
+                                    NotifySub notifySub = prepare(jedisPool);
+                                    if (! running) {
+                                        return;
+                                    }
                                     jedis = jedisPool.getResource();
                                     try {
-                                        if (service.endsWith(Consts.ANY_VALUE)) {
-                                            if (! first) {
-                                                first = false;
-                                                Set<String> keys = jedis.keys(service);
-                                                if (keys != null && keys.size() > 0) {
-                                                    for (String s : keys) {
-                                                        doNotify(jedis, s);
-                                                    }
-                                                }
-                                                resetSkip();
-                                            }
-                                            jedis.psubscribe(new NotifySub(jedisPool), service); // 阻塞
-                                        } else {
-                                            if (! first) {
-                                                first = false;
-                                                doNotify(jedis, service);
-                                                resetSkip();
-                                            }
-                                            jedis.psubscribe(new NotifySub(jedisPool), service + Consts.PATH_SEPARATOR + Consts.ANY_VALUE); // 阻塞
-                                        }
+                                        jedis.psubscribe(notifySub, notifySub.patterns.toArray(new String[0])); // 阻塞
                                         break;
                                     } finally {
+                                        synchronized (this) {
+                                            active = null;
+                                        }
                                     	if(jedis != null){
                                         	jedis.close();
                                         }
@@ -629,7 +1140,12 @@ public class RedisMreg extends FailbackMreg {
         public void shutdown() {
             try {
                 running = false;
-                jedis.disconnect();
+                synchronized (this) {
+                    this.notifyAll();
+                }
+                if (jedis != null) {
+                    jedis.disconnect();
+                }
             } catch (Throwable t) {
                 logger.warn(t.getMessage(), t);
             }
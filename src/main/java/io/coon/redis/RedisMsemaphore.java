@@ -0,0 +1,105 @@
+package io.coon.redis;
+
+import io.coon.redis.RedisLockContext.Attempt;
+import io.coon.redis.RedisLockContext.Renewal;
+import io.coon.support.mlock.AbstractMsemaphore;
+import io.neural.NURL;
+import io.neural.extension.Extension;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The base of Redis Msemaphore.<br>
+ * <br>
+ * 1. 信号量Key=/[group]/[lock]，为ZSET(许可标识 -> 租约到期时间)，获取时清理已到期的许可，未到期数小于permits时获得。<br>
+ * 2. 持有期间由看门狗续约，持有者异常退出后许可到期自动归还；到期时间按Redis服务器时间计算。<br>
+ * 3. 归还时在信号量Key上发布消息唤醒等待者。<br>
+ *
+ * @author lry
+ */
+@Extension("redis")
+public class RedisMsemaphore extends AbstractMsemaphore {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisMsemaphore.class);
+
+	// ARGV=[token, lease, permits]，获得返回nil，否则返回最早到期许可的剩余时间
+	private static final RedisScript ACQUIRE_SCRIPT = new RedisScript(RedisLockContext.SERVER_NOW +
+			"redis.call('zremrangebyscore', KEYS[1], '-inf', now) " +
+			"if redis.call('zcard', KEYS[1]) < tonumber(ARGV[3]) then " +
+			"redis.call('zadd', KEYS[1], now + ARGV[2], ARGV[1]) redis.call('pexpire', KEYS[1], ARGV[2]) return nil end " +
+			"local r = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES') " +
+			"return r[2] - now");
+	private static final RedisScript RELEASE_SCRIPT = new RedisScript(
+			"if redis.call('zrem', KEYS[1], ARGV[1]) == 1 then redis.call('publish', KEYS[1], ARGV[2]) return 1 end " +
+			"return 0");
+	// ARGV=[token, lease]
+	private static final RedisScript RENEW_SCRIPT = new RedisScript(RedisLockContext.SERVER_NOW +
+			"if redis.call('zscore', KEYS[1], ARGV[1]) then " +
+			"redis.call('zadd', KEYS[1], now + ARGV[2], ARGV[1]) redis.call('pexpire', KEYS[1], ARGV[2]) return 1 end " +
+			"return 0");
+
+	private RedisLockContext context;
+	private List<String> keys;
+
+	@Override
+	public void connect(NURL nurl) {
+		super.connect(nurl);
+		this.context = new RedisLockContext(nurl, name);
+		this.keys = Collections.singletonList(context.getKey());
+	}
+
+	@Override
+	public boolean available() {
+		return context != null && context.isAvailable();
+	}
+
+	@Override
+	protected boolean doAcquire(final String token, long waitMillis, boolean interruptibly) throws InterruptedException {
+		final String lease = String.valueOf(context.getLease());
+		return context.acquire(new Attempt() {
+			@Override
+			public Long tryAcquire() {
+				Object ttl = context.eval(ACQUIRE_SCRIPT, keys, Arrays.asList(token, lease, String.valueOf(permits)));
+				if (ttl == null) {
+					context.startWatchdog(token, new Renewal() {
+						@Override
+						public boolean renew() {
+							return Long.valueOf(1).equals(context.eval(RENEW_SCRIPT, keys, Arrays.asList(token, lease)));
+						}
+					});
+					return null;
+				}
+
+				return (Long) ttl;
+			}
+		}, waitMillis, interruptibly);
+	}
+
+	@Override
+	protected void doRelease(String token) {
+		context.stopWatchdog(token);
+		Object result = context.eval(RELEASE_SCRIPT, keys, Arrays.asList(token, RedisLockContext.RELEASE_MESSAGE));
+		if (!Long.valueOf(1).equals(result)) {
+			logger.warn("The msemaphore[{}] lease of token[{}] has expired before release.", context.getKey(), token);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		for (String token : super.getTokens()) {
+			try {
+				context.stopWatchdog(token);
+				context.eval(RELEASE_SCRIPT, keys, Arrays.asList(token, RedisLockContext.RELEASE_MESSAGE));
+			} catch (Throwable t) {
+				logger.warn("Failed to release msemaphore " + context.getKey() + " on destroy, cause: " + t.getMessage(), t);
+			}
+		}
+		context.destroy();
+	}
+
+}
@@ -0,0 +1,74 @@
+package io.coon.redis;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Redis服务端Lua脚本：以本地计算的SHA1执行EVALSHA，服务端未缓存(NOSCRIPT)时SCRIPT LOAD后重试。
+ *
+ * @author lry
+ */
+final class RedisScript {
+
+	private static final String NOSCRIPT = "NOSCRIPT";
+
+	private final String script;
+	private final String sha;
+
+	RedisScript(String script) {
+		this.script = script;
+		this.sha = sha1(script);
+	}
+
+	String getScript() {
+		return script;
+	}
+
+	String getSha() {
+		return sha;
+	}
+
+	Object eval(Jedis jedis, List<String> keys, List<String> args) {
+		try {
+			return jedis.evalsha(sha, keys, args);
+		} catch (JedisDataException e) {
+			if (e.getMessage() == null || !e.getMessage().startsWith(NOSCRIPT)) {
+				throw e;
+			}
+		}
+
+		// 服务端重启或切换后脚本缓存丢失，重新加载
+		jedis.scriptLoad(script);
+		return jedis.evalsha(sha, keys, args);
+	}
+
+	/**
+	 * 确保服务端已缓存脚本，管道中的EVALSHA无法在NOSCRIPT时重试
+	 *
+	 * @param jedis
+	 */
+	void load(Jedis jedis) {
+		if (!Boolean.TRUE.equals(jedis.scriptExists(sha))) {
+			jedis.scriptLoad(script);
+		}
+	}
+
+	private static String sha1(String script) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] bytes = digest.digest(script.getBytes(Charset.forName("UTF-8")));
+			StringBuilder buf = new StringBuilder(bytes.length * 2);
+			for (byte b : bytes) {
+				buf.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return buf.toString();
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to digest redis script, cause: " + e.getMessage(), e);
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package io.coon.redis;
+
+import io.coon.support.Consts;
+import io.coon.support.mreg.MregCommon;
+import io.neural.NURL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Redis连接池的公共构建方法，供注册中心和分布式锁共用同一套连接参数。
+ *
+ * @author lry
+ */
+final class RedisSupport {
+
+	static final int DEFAULT_REDIS_PORT = 6379;
+
+	private RedisSupport() {
+	}
+
+	static GenericObjectPoolConfig toPoolConfig(NURL nurl) {
+        GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+        config.setTestOnBorrow(nurl.getParameter("test.on.borrow", true));
+        config.setTestOnReturn(nurl.getParameter("test.on.return", false));
+        config.setTestWhileIdle(nurl.getParameter("test.while.idle", false));
+        if (nurl.getParameter("max.idle", 0) > 0)
+            config.setMaxIdle(nurl.getParameter("max.idle", 0));
+        if (nurl.getParameter("min.idle", 0) > 0)
+            config.setMinIdle(nurl.getParameter("min.idle", 0));
+        if (nurl.getParameter("max.total", 0) > 0)
+            config.setMaxTotal(nurl.getParameter("max.total", 0));
+        if (nurl.getParameter("max.wait.millis", nurl.getParameter("timeout", 0)) > 0)
+            config.setMaxWaitMillis(nurl.getParameter("max.wait.millis", nurl.getParameter("timeout", 0)));
+        if (nurl.getParameter("num.tests.per.eviction.run", 0) > 0)
+            config.setNumTestsPerEvictionRun(nurl.getParameter("num.tests.per.eviction.run", 0));
+        if (nurl.getParameter("time.between.eviction.runs.millis", 0) > 0)
+            config.setTimeBetweenEvictionRunsMillis(nurl.getParameter("time.between.eviction.runs.millis", 0));
+        if (nurl.getParameter("min.evictable.idle.time.millis", 0) > 0)
+            config.setMinEvictableIdleTimeMillis(nurl.getParameter("min.evictable.idle.time.millis", 0));
+
+        return config;
+	}
+
+	/**
+	 * 主地址+backup备选地址
+	 *
+	 * @param nurl
+	 * @return
+	 */
+	static List<String> toAddresses(NURL nurl) {
+        List<String> addresses = new ArrayList<String>();
+        addresses.add(nurl.getAddress());
+        String[] backups = nurl.getParameter(Consts.BACKUP_KEY, new String[0]);
+        if (backups != null && backups.length > 0) {
+            addresses.addAll(Arrays.asList(backups));
+        }
+
+        return addresses;
+	}
+
+	static JedisPool toJedisPool(GenericObjectPoolConfig config, NURL nurl, String address) {
+        int i = address.indexOf(':');
+        String host;
+        int port;
+        if (i > 0) {
+            host = address.substring(0, i);
+            port = Integer.parseInt(address.substring(i + 1));
+        } else {
+            host = address;
+            port = DEFAULT_REDIS_PORT;
+        }
+
+        // 增加Redis密码支持
+        String password = nurl.getPassword();
+        if (MregCommon.isEmpty(password)) {
+            return new JedisPool(config, host, port, nurl.getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_TIMEOUT));
+        } else {
+            // 使用密码连接。  此处要求备用redis与主要redis使用相同的密码
+            return new JedisPool(config, host, port, nurl.getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_TIMEOUT), password);
+        }
+	}
+
+}
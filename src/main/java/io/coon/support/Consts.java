@@ -65,6 +65,21 @@ public class Consts {
 	public static final String REGISTRY_FILESAVE_SYNC_KEY = "save.file";
 	/**注册中心失败事件重试事件**/
 	public static final String REGISTRY_RETRY_PERIOD_KEY = "retry.period";
+	/**批量注册和订阅的并行线程数**/
+	public static final String BULK_THREADS_KEY = "bulk.threads";
+	public static final int DEFAULT_BULK_THREADS = 16;
+	/**通配订阅(interface=*)展开各服务订阅的并行线程数**/
+	public static final String WILDCARD_THREADS_KEY = "wildcard.threads";
+	public static final int DEFAULT_WILDCARD_THREADS = 8;
+	/**无原生异步接口时(如zkclient、Jedis)执行异步操作的线程数**/
+	public static final String ASYNC_THREADS_KEY = "async.threads";
+	public static final int DEFAULT_ASYNC_THREADS = 4;
+	/**注册中心磁盘缓存防抖窗口，窗口内无新变更时合并写入**/
+	public static final String SAVE_DEBOUNCE_KEY = "save.debounce";
+	public static final int DEFAULT_SAVE_DEBOUNCE = 1000;
+	/**注册中心磁盘缓存持续变更时的最大写入延迟**/
+	public static final String SAVE_MAX_DELAY_KEY = "save.max.delay";
+	public static final int DEFAULT_SAVE_MAX_DELAY = 5 * 1000;
 	/**重试周期**/
 	public static final int DEFAULT_REGISTRY_RETRY_PERIOD = 5 * 1000;
 	/**注册中心自动重连时间**/
@@ -73,5 +88,56 @@ public class Consts {
 	public static final int DEFAULT_REGISTRY_RECONNECT_PERIOD = 3 * 1000;
 	public static final String SESSION_TIMEOUT_KEY = "session";
 	public static final int DEFAULT_SESSION_TIMEOUT = 60 * 1000;
+	/**Redis注册中心心跳续期方式：script(Lua脚本，按分类合并)或pipeline(管道批量)**/
+	public static final String HEARTBEAT_MODE_KEY = "heartbeat.mode";
+	public static final String HEARTBEAT_MODE_SCRIPT = "script";
+	public static final String HEARTBEAT_MODE_PIPELINE = "pipeline";
+	/**心跳续期每批最大条数**/
+	public static final String HEARTBEAT_BATCH_KEY = "heartbeat.batch";
+	public static final int DEFAULT_HEARTBEAT_BATCH = 500;
+	/**ZooKeeper监听方式：watcher(一次性Watcher，触发后重新读取并注册)、tree(本地缓存整棵树，事件驱动增量更新)或persistent(3.6+永久递归监听，无需重新注册)**/
+	public static final String WATCH_KEY = "watch";
+	public static final String WATCH_WATCHER = "watcher";
+	public static final String WATCH_TREE = "tree";
+	public static final String WATCH_PERSISTENT = "persistent";
+	/**查询方式：remote(每次查询注册中心)或local(已订阅的服务从通知结果返回，未订阅的服务使用近端缓存)**/
+	public static final String LOOKUP_KEY = "lookup";
+	public static final String LOOKUP_REMOTE = "remote";
+	public static final String LOOKUP_LOCAL = "local";
+	/**local查询方式下未订阅服务查询结果的最大过期时间**/
+	public static final String LOOKUP_STALE_KEY = "lookup.stale";
+	public static final int DEFAULT_LOOKUP_STALE = 1000;
+	/**local查询方式下近端缓存的最大服务数**/
+	public static final String LOOKUP_CACHE_KEY = "lookup.cache";
+	public static final int DEFAULT_LOOKUP_CACHE = 1024;
+	/**ZooKeeper批量注册每个multi事务的最大操作数**/
+	public static final String MULTI_BATCH_KEY = "multi.batch";
+	public static final int DEFAULT_MULTI_BATCH = 500;
+	/**注册中心变更事件分发线程数，同一服务的事件总在同一线程内按序处理**/
+	public static final String NOTIFY_THREADS_KEY = "notify.threads";
+	public static final int DEFAULT_NOTIFY_THREADS = 4;
+	/**注册中心变更事件分发线程的队列长度，队列满时阻塞订阅连接**/
+	public static final String NOTIFY_QUEUES_KEY = "notify.queues";
+	public static final int DEFAULT_NOTIFY_QUEUES = 1000;
+	/**是否异步回调订阅监听器，同一订阅的回调按序执行，排队中的全量通知只回调最新一次**/
+	public static final String LISTENER_ASYNC_KEY = "listener.async";
+	/**订阅监听器回调线程数**/
+	public static final String LISTENER_THREADS_KEY = "listener.threads";
+	public static final int DEFAULT_LISTENER_THREADS = 4;
+	/**订阅监听器回调线程的队列长度，队列满时阻塞通知线程**/
+	public static final String LISTENER_QUEUES_KEY = "listener.queues";
+	public static final int DEFAULT_LISTENER_QUEUES = 1000;
+	/**注册数据NURL解析缓存容量，0表示不缓存**/
+	public static final String PARSE_CACHE_KEY = "parse.cache";
+	public static final int DEFAULT_PARSE_CACHE = 10000;
+	
+	/**分布式锁名称**/
+	public static final String LOCK_KEY = "lock";
+	/**分布式锁租约时间**/
+	public static final String LEASE_KEY = "lease";
+	public static final int DEFAULT_LEASE = 30 * 1000;
+	/**分布式信号量许可数**/
+	public static final String PERMITS_KEY = "permits";
+	public static final int DEFAULT_PERMITS = 1;
 
 }
@@ -0,0 +1,230 @@
+package io.coon.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 异步操作结果<br>
+ * <br>
+ * 1. 由操作的执行方调用{@link #set(Object)}或{@link #fail(Throwable)}完成，只有第一次完成有效。<br>
+ * 2. 完成回调在完成线程中执行(ZK事件线程、执行器线程等)，已完成时添加的回调在当前线程立即执行，回调中不应有阻塞操作。<br>
+ *
+ * @author lry
+ */
+public class CoonFuture<V> implements Future<V> {
+
+	private static final Logger logger = LoggerFactory.getLogger(CoonFuture.class);
+
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private List<Listener<V>> listeners = new ArrayList<Listener<V>>(2);
+	private volatile boolean done;
+	private volatile boolean cancelled;
+	private V value;
+	private Throwable cause;
+
+	/**
+	 * 在执行器中执行任务
+	 */
+	public static <V> CoonFuture<V> submit(Executor executor, final Callable<V> task) {
+		final CoonFuture<V> future = new CoonFuture<V>();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (future.isDone()) {
+						return;
+					}
+					try {
+						future.set(task.call());
+					} catch (Throwable t) {
+						future.fail(t);
+					}
+				}
+			});
+		} catch (Throwable t) { // 执行器已关闭或已满
+			future.fail(t);
+		}
+		return future;
+	}
+
+	public static <V> CoonFuture<V> succeeded(V value) {
+		CoonFuture<V> future = new CoonFuture<V>();
+		future.set(value);
+		return future;
+	}
+
+	public static <V> CoonFuture<V> failed(Throwable cause) {
+		CoonFuture<V> future = new CoonFuture<V>();
+		future.fail(cause);
+		return future;
+	}
+
+	/**
+	 * 成功完成
+	 *
+	 * @param value 结果
+	 * @return 是否由本次调用完成
+	 */
+	public boolean set(V value) {
+		return this.complete(value, null, false);
+	}
+
+	/**
+	 * 失败完成
+	 *
+	 * @param cause 失败原因
+	 * @return 是否由本次调用完成
+	 */
+	public boolean fail(Throwable cause) {
+		return this.complete(null, cause, false);
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return this.complete(null, new CancellationException(), true);
+	}
+
+	private boolean complete(V value, Throwable cause, boolean cancelled) {
+		List<Listener<V>> callbacks;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			this.value = value;
+			this.cause = cause;
+			this.cancelled = cancelled;
+			this.done = true;
+			callbacks = listeners;
+			listeners = null;
+		}
+
+		latch.countDown();
+		for (Listener<V> listener : callbacks) {
+			this.callback(listener);
+		}
+		return true;
+	}
+
+	/**
+	 * 添加完成回调
+	 *
+	 * @param listener 完成回调
+	 * @return
+	 */
+	public CoonFuture<V> addListener(Listener<V> listener) {
+		synchronized (this) {
+			if (!done) {
+				listeners.add(listener);
+				return this;
+			}
+		}
+
+		this.callback(listener);
+		return this;
+	}
+
+	private void callback(Listener<V> listener) {
+		try {
+			listener.complete(this);
+		} catch (Throwable t) {
+			logger.warn("Failed to callback future listener " + listener + ", cause: " + t.getMessage(), t);
+		}
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done;
+	}
+
+	public boolean isSuccess() {
+		return done && cause == null;
+	}
+
+	/**
+	 * @return 失败原因，未完成或成功时返回null
+	 */
+	public Throwable getCause() {
+		return done ? cause : null;
+	}
+
+	/**
+	 * @return 结果，未完成或失败时返回null
+	 */
+	public V getNow() {
+		return done ? value : null;
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return this.report();
+	}
+
+	@Override
+	public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return this.report();
+	}
+
+	/**
+	 * 等待完成，失败时直接抛出运行时异常，供同步方法包装使用
+	 *
+	 * @return 结果
+	 */
+	public V join() {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for future", e);
+		}
+		if (cause == null) {
+			return value;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new IllegalStateException(cause.getMessage(), cause);
+	}
+
+	private V report() throws ExecutionException {
+		if (cancelled) {
+			throw (CancellationException) cause;
+		}
+		if (cause != null) {
+			throw new ExecutionException(cause.getMessage(), cause);
+		}
+		return value;
+	}
+
+	/**
+	 * 完成回调
+	 */
+	public interface Listener<V> {
+
+		void complete(CoonFuture<V> future);
+
+	}
+
+}
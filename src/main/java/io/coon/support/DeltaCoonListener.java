@@ -0,0 +1,24 @@
+package io.coon.support;
+
+import java.util.List;
+
+/**
+ * 增量变更监听器<br>
+ * <br>
+ * 1. 每个订阅的每个分类第一次通知时，仍回调{@link #notify(List)}全量数据。<br>
+ * 2. 之后只回调与该监听器上一次收到的数据相比新增和删除的部分，没有实际变化时不回调。<br>
+ * 3. 失败重试时回调{@link #notify(List)}全量数据，监听器需以全量数据为准重建状态。<br>
+ *
+ * @author lry
+ */
+public interface DeltaCoonListener<T> extends CoonListener<T> {
+
+	/**
+	 * 当收到增量变更通知时触发。
+	 *
+	 * @param added 新增的数据，可能为空
+	 * @param removed 删除的数据，可能为空
+	 */
+	void notifyDelta(List<T> added, List<T> removed);
+
+}
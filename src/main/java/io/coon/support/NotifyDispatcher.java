@@ -0,0 +1,217 @@
+package io.coon.support;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 通知分发器<br>
+ * <br>
+ * 1. 按订阅NURL分段串行投递，同一订阅的通知保持顺序，慢监听器只阻塞自己所在的分段。<br>
+ * 2. 同一订阅、监听器和分类的全量通知在排队期间合并，只投递最新的一次。<br>
+ * 3. 同步投递(如订阅过程中的第一次通知)与异步投递互斥执行，总是投递当时最新的数据。<br>
+ * 4. 槽位在没有待投递和投递中的通知时移除，已消失的分类和服务不会长期占用槽位。<br>
+ *
+ * @author lry
+ */
+public class NotifyDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(NotifyDispatcher.class);
+
+	private final StripedExecutor executor;
+	// 合并Key -> 待投递槽位
+	private final ConcurrentMap<List<?>, Slot> slots = new ConcurrentHashMap<List<?>, Slot>();
+	private final AtomicLong dispatched = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	public NotifyDispatcher(String name, int threads, int queues) {
+		this.executor = new StripedExecutor(name, threads, queues);
+	}
+
+	/**
+	 * 分发一次通知
+	 *
+	 * @param stripe 顺序Key，相同Key的通知串行投递
+	 * @param key 合并Key，相同Key排队中的通知只投递最新的一次，其首个元素应为顺序Key
+	 * @param delivery 投递动作
+	 * @param sync 是否在当前线程同步投递，同步投递时异常直接抛出
+	 */
+	public void dispatch(Object stripe, List<?> key, Runnable delivery, boolean sync) {
+		dispatched.incrementAndGet();
+		Slot slot;
+		boolean submit;
+		for (;;) {
+			slot = slots.get(key);
+			if (slot == null) {
+				slots.putIfAbsent(key, new Slot(key));
+				continue;
+			}
+			synchronized (slot) {
+				if (slot.retired) {
+					continue; // 已空闲移除，重新获取
+				}
+				submit = slot.pending == null;
+				slot.pending = delivery;
+				if (sync || submit) {
+					slot.active++;
+				}
+			}
+			break;
+		}
+		if (!submit) {
+			coalesced.incrementAndGet();
+		}
+
+		if (sync) {
+			this.deliver(slot);
+		} else if (submit) {
+			final Slot target = slot;
+			executor.execute(stripe, new Runnable() {
+				@Override
+				public void run() {
+					try {
+						deliver(target);
+					} catch (Throwable t) { // 防御性容错，投递动作应自行处理异常
+						logger.error("Failed to deliver notify, cause: " + t.getMessage(), t);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * 投递槽位中最新的通知，同一槽位的投递互斥执行
+	 */
+	private void deliver(Slot slot) {
+		try {
+			synchronized (slot.lock) {
+				Runnable delivery;
+				synchronized (slot) {
+					delivery = slot.pending;
+					slot.pending = null;
+				}
+				if (delivery == null) {
+					return; // 已被同步投递或前一次投递取走
+				}
+
+				try {
+					delivery.run();
+					delivered.incrementAndGet();
+				} catch (RuntimeException e) {
+					failed.incrementAndGet();
+					throw e;
+				} catch (Error e) {
+					failed.incrementAndGet();
+					throw e;
+				}
+			}
+		} finally {
+			synchronized (slot) {
+				slot.active--;
+				if (slot.pending == null && slot.active <= 0 && !slot.retired) {
+					slot.retired = true;
+					slots.remove(slot.key, slot);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 移除顺序Key下所有尚未投递的通知，用于取消订阅
+	 *
+	 * @param stripe 顺序Key
+	 * @param marker 合并Key中需同时包含的元素，如监听器
+	 */
+	public void cancel(Object stripe, Object marker) {
+		for (Iterator<Map.Entry<List<?>, Slot>> iterator = slots.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<List<?>, Slot> entry = iterator.next();
+			List<?> key = entry.getKey();
+			if (!key.isEmpty() && stripe.equals(key.get(0)) && key.contains(marker)) {
+				iterator.remove();
+				synchronized (entry.getValue()) {
+					entry.getValue().pending = null;
+					entry.getValue().retired = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 尚未投递的通知数(已合并)
+	 *
+	 * @return
+	 */
+	public int getPendingCount() {
+		int count = 0;
+		for (Slot slot : slots.values()) {
+			synchronized (slot) {
+				if (slot.pending != null) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 各分段队列中排队的投递任务数
+	 *
+	 * @return
+	 */
+	public int getQueueSize() {
+		return executor.getQueueSize();
+	}
+
+	public long getDispatchedCount() {
+		return dispatched.get();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+		slots.clear();
+	}
+
+	/**
+	 * 槽位数，即有待投递或投递中通知的合并Key数
+	 *
+	 * @return
+	 */
+	public int getSlotCount() {
+		return slots.size();
+	}
+
+	private static class Slot {
+		private final List<?> key;
+		private final Object lock = new Object();
+		private Runnable pending;
+		// 已提交或执行中的投递数
+		private int active;
+		// 已从槽位表中移除
+		private boolean retired;
+
+		private Slot(List<?> key) {
+			this.key = key;
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+package io.coon.support;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分段串行执行器<br>
+ * <br>
+ * 1. 同一Key的任务总是落在同一个单线程有界队列中，按提交顺序执行；不同Key之间并行。<br>
+ * 2. 队列满时阻塞提交者，形成背压，而不是丢弃任务或由提交者线程执行(会打乱顺序)。<br>
+ *
+ * @author lry
+ */
+public class StripedExecutor {
+
+	private static final RejectedExecutionHandler BLOCKING_POLICY = new RejectedExecutionHandler() {
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("The striped executor has been shutdown.");
+			}
+			try {
+				executor.getQueue().put(r);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for the striped executor queue.", e);
+			}
+		}
+	};
+
+	private final ThreadPoolExecutor[] stripes;
+
+	public StripedExecutor(String name, int threads, int queues) {
+		if (threads < 1 || queues < 1) {
+			throw new IllegalArgumentException("The threads and queues of striped executor must be greater than 0.");
+		}
+
+		this.stripes = new ThreadPoolExecutor[threads];
+		for (int i = 0; i < threads; i++) {
+			stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queues),
+					new NamedThreadFactory(name + "-" + i, true), BLOCKING_POLICY);
+		}
+	}
+
+	/**
+	 * 提交任务
+	 *
+	 * @param key 顺序Key，相同Key的任务串行执行
+	 * @param task
+	 */
+	public void execute(Object key, Runnable task) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		stripes[(hash & Integer.MAX_VALUE) % stripes.length].execute(task);
+	}
+
+	/**
+	 * 所有分段队列中排队的任务数
+	 *
+	 * @return
+	 */
+	public int getQueueSize() {
+		int size = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			size += stripe.getQueue().size();
+		}
+		return size;
+	}
+
+	public void shutdown() {
+		for (ThreadPoolExecutor stripe : stripes) {
+			stripe.shutdown();
+		}
+	}
+
+}
@@ -2,8 +2,16 @@ package io.coon.support.mconf;
 
 import io.coon.api.Mconf;
 import io.coon.support.Consts;
+import io.coon.support.CoonFuture;
+import io.coon.support.NamedThreadFactory;
 import io.neural.NURL;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,17 +23,81 @@ public abstract class AbstractMconf implements Mconf {
 
 	protected NURL nurl;
 	protected String ROOT;
+	// 无原生异步接口时执行异步操作的执行器
+	private ThreadPoolExecutor asyncExecutor;
 
 	@Override
 	public void connect(NURL nurl) {
 		this.nurl = nurl;
 		this.ROOT = nurl.getParameter(Consts.GROUP_KEY, "mconf");
+		int asyncThreads = nurl.getParameter(Consts.ASYNC_THREADS_KEY, Consts.DEFAULT_ASYNC_THREADS);
+		this.asyncExecutor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("MconfAsync", true));
+		this.asyncExecutor.allowCoreThreadTimeOut(true);
 	}
 	@Override
 	public NURL getNurl() {
 		return nurl;
 	}
 
+	@Override
+	public CoonFuture<Void> publishAsync(final Mcf mcf, final Object obj) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				publish(mcf, obj);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public CoonFuture<Void> unpublishAsync(final Mcf mcf, final Object obj) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				unpublish(mcf, obj);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public <T> CoonFuture<T> lookupAsync(final Mcf mcf, final Class<T> cls) {
+		return this.submit(new Callable<T>() {
+			@Override
+			public T call() {
+				return lookup(mcf, cls);
+			}
+		});
+	}
+
+	@Override
+	public <T> CoonFuture<List<T>> lookupsAsync(final Mcf mcf, final Class<T> cls) {
+		return this.submit(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return lookups(mcf, cls);
+			}
+		});
+	}
+
+	/**
+	 * 在异步执行器中执行同步操作，供无原生异步接口的实现使用
+	 */
+	protected <V> CoonFuture<V> submit(Callable<V> task) {
+		return CoonFuture.submit(asyncExecutor, task);
+	}
+
+	/**
+	 * 关闭异步执行器，由子类在destroy中调用
+	 */
+	protected void shutdownAsync() {
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdown();
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	protected <T> T json2Obj(String json, Class<T> clazz) {
 		try {
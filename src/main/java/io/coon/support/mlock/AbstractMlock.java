@@ -0,0 +1,164 @@
+package io.coon.support.mlock;
+
+import io.coon.api.Mlock;
+import io.coon.support.Consts;
+import io.neural.NURL;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分布式锁基类：负责线程重入计数和持有者标识，远程加锁/解锁由子类实现。
+ *
+ * @author lry
+ */
+public abstract class AbstractMlock implements Mlock {
+
+	protected NURL nurl;
+	protected String name;
+	// 本实例唯一标识，与线程ID一起组成锁持有者标识，避免释放其它客户端持有的锁
+	private final String id = UUID.randomUUID().toString();
+	// 线程重入计数
+	private final ConcurrentMap<Thread, AtomicInteger> holds = new ConcurrentHashMap<Thread, AtomicInteger>();
+
+	@Override
+	public void connect(NURL nurl) {
+		if (nurl == null) {
+			throw new IllegalArgumentException("mlock nurl == null");
+		}
+		String name = nurl.getParameter(Consts.LOCK_KEY);
+		if (name == null || name.length() == 0) {
+			throw new IllegalArgumentException("The must set '" + Consts.LOCK_KEY + "' of mlock nurl: " + nurl);
+		}
+		this.nurl = nurl;
+		this.name = name;
+	}
+
+	@Override
+	public NURL getNurl() {
+		return nurl;
+	}
+
+	@Override
+	public void lock() {
+		if (this.reenter()) {
+			return;
+		}
+		try {
+			this.acquire(-1, false);
+		} catch (InterruptedException e) {
+			// 不可中断模式下不会抛出
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean tryLock() {
+		if (this.reenter()) {
+			return true;
+		}
+		try {
+			return this.acquire(0, false);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Override
+	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (this.reenter()) {
+			return true;
+		}
+		return this.acquire(Math.max(0, unit.toMillis(time)), true);
+	}
+
+	@Override
+	public void lockInterruptibly() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (this.reenter()) {
+			return;
+		}
+		this.acquire(-1, true);
+	}
+
+	@Override
+	public void unlock() {
+		Thread current = Thread.currentThread();
+		AtomicInteger count = holds.get(current);
+		if (count == null) {
+			throw new IllegalMonitorStateException("The mlock[" + name + "] is not held by current thread: " + current.getName());
+		}
+		if (count.decrementAndGet() > 0) {
+			return;
+		}
+
+		holds.remove(current);
+		this.doUnlock(this.getOwner());
+	}
+
+	/**
+	 * 当前线程的重入次数，0表示未持有
+	 *
+	 * @return
+	 */
+	public int getHoldCount() {
+		AtomicInteger count = holds.get(Thread.currentThread());
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * 锁持有者标识=实例ID:线程ID
+	 *
+	 * @return
+	 */
+	protected String getOwner() {
+		return id + ":" + Thread.currentThread().getId();
+	}
+
+	private boolean reenter() {
+		AtomicInteger count = holds.get(Thread.currentThread());
+		if (count != null) {
+			count.incrementAndGet();
+			return true;
+		}
+
+		return false;
+	}
+
+	private boolean acquire(long waitMillis, boolean interruptibly) throws InterruptedException {
+		if (this.doLock(this.getOwner(), waitMillis, interruptibly)) {
+			holds.put(Thread.currentThread(), new AtomicInteger(1));
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * 远程加锁
+	 *
+	 * @param owner 锁持有者标识
+	 * @param waitMillis 最长等待时间，小于0表示一直等待，0表示只尝试一次
+	 * @param interruptibly 是否响应中断，为false时需自行吞掉中断并在返回前恢复中断标识
+	 * @return 是否获得锁
+	 * @throws InterruptedException
+	 */
+	protected abstract boolean doLock(String owner, long waitMillis, boolean interruptibly) throws InterruptedException;
+
+	/**
+	 * 远程解锁
+	 *
+	 * @param owner 锁持有者标识
+	 */
+	protected abstract void doUnlock(String owner);
+
+}
@@ -0,0 +1,101 @@
+package io.coon.support.mlock;
+
+import io.coon.api.Mlock;
+import io.coon.api.MreadWriteLock;
+import io.coon.support.Consts;
+import io.neural.NURL;
+
+import java.util.UUID;
+
+/**
+ * 分布式读写锁基类：读锁和写锁视图共用同一个持有者标识，以便识别写锁降级为读锁。
+ *
+ * @author lry
+ */
+public abstract class AbstractMreadWriteLock implements MreadWriteLock {
+
+	protected NURL nurl;
+	protected String name;
+	// 本实例唯一标识，与线程ID一起组成锁持有者标识
+	private final String id = UUID.randomUUID().toString();
+	private Mlock readLock;
+	private Mlock writeLock;
+
+	@Override
+	public void connect(NURL nurl) {
+		if (nurl == null) {
+			throw new IllegalArgumentException("mlock nurl == null");
+		}
+		String name = nurl.getParameter(Consts.LOCK_KEY);
+		if (name == null || name.length() == 0) {
+			throw new IllegalArgumentException("The must set '" + Consts.LOCK_KEY + "' of mlock nurl: " + nurl);
+		}
+		this.nurl = nurl;
+		this.name = name;
+	}
+
+	@Override
+	public NURL getNurl() {
+		return nurl;
+	}
+
+	@Override
+	public Mlock readLock() {
+		if (readLock == null) {
+			throw new IllegalStateException("The mread write lock is not connected.");
+		}
+		return readLock;
+	}
+
+	@Override
+	public Mlock writeLock() {
+		if (writeLock == null) {
+			throw new IllegalStateException("The mread write lock is not connected.");
+		}
+		return writeLock;
+	}
+
+	/**
+	 * 子类完成连接后调用，设置读锁和写锁视图
+	 *
+	 * @param readLock
+	 * @param writeLock
+	 */
+	protected void setLocks(LockView readLock, LockView writeLock) {
+		readLock.connect(nurl);
+		writeLock.connect(nurl);
+		this.readLock = readLock;
+		this.writeLock = writeLock;
+	}
+
+	/**
+	 * 读写锁持有者标识=实例ID:线程ID
+	 *
+	 * @return
+	 */
+	protected String getOwner() {
+		return id + ":" + Thread.currentThread().getId();
+	}
+
+	/**
+	 * 读锁或写锁视图，连接和销毁由所属读写锁负责
+	 */
+	protected abstract class LockView extends AbstractMlock {
+
+		@Override
+		public boolean available() {
+			return AbstractMreadWriteLock.this.available();
+		}
+
+		@Override
+		protected String getOwner() {
+			return AbstractMreadWriteLock.this.getOwner();
+		}
+
+		@Override
+		public void destroy() {
+		}
+
+	}
+
+}
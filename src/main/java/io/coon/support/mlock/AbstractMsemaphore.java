@@ -0,0 +1,123 @@
+package io.coon.support.mlock;
+
+import io.coon.api.Msemaphore;
+import io.coon.support.Consts;
+import io.neural.NURL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式信号量基类：每个许可对应一个唯一的许可标识，本实例持有的许可不绑定线程。
+ *
+ * @author lry
+ */
+public abstract class AbstractMsemaphore implements Msemaphore {
+
+	protected NURL nurl;
+	protected String name;
+	protected int permits;
+	// 本实例持有的许可标识
+	private final Queue<String> tokens = new ConcurrentLinkedQueue<String>();
+
+	@Override
+	public void connect(NURL nurl) {
+		if (nurl == null) {
+			throw new IllegalArgumentException("mlock nurl == null");
+		}
+		String name = nurl.getParameter(Consts.LOCK_KEY);
+		if (name == null || name.length() == 0) {
+			throw new IllegalArgumentException("The must set '" + Consts.LOCK_KEY + "' of mlock nurl: " + nurl);
+		}
+		int permits = nurl.getParameter(Consts.PERMITS_KEY, Consts.DEFAULT_PERMITS);
+		if (permits < 1) {
+			throw new IllegalArgumentException("The '" + Consts.PERMITS_KEY + "' of mlock nurl must be greater than 0: " + nurl);
+		}
+		this.nurl = nurl;
+		this.name = name;
+		this.permits = permits;
+	}
+
+	@Override
+	public NURL getNurl() {
+		return nurl;
+	}
+
+	@Override
+	public void acquire() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		this.acquire(-1, true);
+	}
+
+	@Override
+	public boolean tryAcquire() {
+		try {
+			return this.acquire(0, false);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Override
+	public boolean tryAcquire(long time, TimeUnit unit) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		return this.acquire(Math.max(0, unit.toMillis(time)), true);
+	}
+
+	@Override
+	public void release() {
+		String token = tokens.poll();
+		if (token == null) {
+			throw new IllegalStateException("The msemaphore[" + name + "] has no permit held by this instance.");
+		}
+
+		this.doRelease(token);
+	}
+
+	/**
+	 * 本实例当前持有的许可标识
+	 *
+	 * @return
+	 */
+	protected List<String> getTokens() {
+		return new ArrayList<String>(tokens);
+	}
+
+	private boolean acquire(long waitMillis, boolean interruptibly) throws InterruptedException {
+		String token = UUID.randomUUID().toString();
+		if (this.doAcquire(token, waitMillis, interruptibly)) {
+			tokens.offer(token);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * 远程获取许可
+	 *
+	 * @param token 许可标识
+	 * @param waitMillis 最长等待时间，小于0表示一直等待，0表示只尝试一次
+	 * @param interruptibly 是否响应中断，为false时需自行吞掉中断并在返回前恢复中断标识
+	 * @return 是否获得许可
+	 * @throws InterruptedException
+	 */
+	protected abstract boolean doAcquire(String token, long waitMillis, boolean interruptibly) throws InterruptedException;
+
+	/**
+	 * 远程归还许可
+	 *
+	 * @param token 许可标识
+	 */
+	protected abstract void doRelease(String token);
+
+}
@@ -0,0 +1,20 @@
+package io.coon.support.mlock.exception;
+
+/**
+ * 分布式锁异常
+ *
+ * @author lry
+ */
+public class MlockException extends RuntimeException {
+
+	private static final long serialVersionUID = -2473151826541289517L;
+
+	public MlockException(String message) {
+		super(message);
+	}
+
+	public MlockException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -3,29 +3,24 @@ package io.coon.support.mreg;
 import io.coon.api.Mreg;
 import io.coon.support.Consts;
 import io.coon.support.CoonListener;
-import io.coon.support.NamedThreadFactory;
+import io.coon.support.DeltaCoonListener;
+import io.coon.support.NotifyDispatcher;
 import io.neural.NURL;
 import io.neural.micro.ConcurrentHashSet;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.RandomAccessFile;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -36,23 +31,31 @@ public abstract class AbstractMreg implements Mreg {
 
 	private static final Logger logger = LoggerFactory.getLogger(AbstractMreg.class);
 
-    // NURL地址分隔符，用于文件缓存中，服务提供者EURL分隔
-    private static final char NURL_SEPARATOR = ' ';
-    // NURL地址分隔正则表达式，用于解析文件缓存中服务提供者EURL列表
-    private static final String NURL_SPLIT = "\\s+";
     private NURL mregNurl;
     // 本地磁盘缓存文件
     private File file;
-    // 本地磁盘缓存，其中特殊的key值.registies记录注册中心列表，其它均为notified服务提供者列表
-    private final Properties properties = new Properties();
-    // 文件缓存定时写入
-    private final ExecutorService mregCacheExecutor = Executors.newFixedThreadPool(1, new NamedThreadFactory("LocalSaveMregCache", true));
+    // 本地磁盘缓存，按服务Key存储notified服务提供者列表
+    private MregCacheStore cacheStore;
+    // 磁盘缓存的已解析视图：服务Key -> NURL列表，随通知同步更新，订阅失败时直接命中
+    private final ConcurrentMap<String, List<NURL>> cacheUrls = new ConcurrentHashMap<String, List<NURL>>();
+    // 文件缓存延迟合并写入
+    private MregCacheFlusher cacheFlusher;
     //是否是同步保存文件
     private boolean syncSaveFile ;
     private final AtomicLong lastCacheChanged = new AtomicLong();
     private final Set<NURL> registered = new ConcurrentHashSet<NURL>();
     private final ConcurrentMap<NURL, Set<CoonListener<NURL>>> subscribed = new ConcurrentHashMap<NURL, Set<CoonListener<NURL>>>();
+    // 订阅索引，变更时只匹配候选订阅
+    private final SubscriptionIndex subscriptionIndex = new SubscriptionIndex();
+    // 注册数据解析缓存
+    private NurlCache nurlCache = new NurlCache(Consts.DEFAULT_PARSE_CACHE);
     private final ConcurrentMap<NURL, Map<String, List<NURL>>> notified = new ConcurrentHashMap<NURL, Map<String, List<NURL>>>();
+    // 监听器回调分发器，为null时在通知线程内同步回调
+    private NotifyDispatcher notifyDispatcher;
+    // 增量监听器最后一次收到的数据：[订阅条件, 监听器, 分类] -> 数据
+    private final ConcurrentMap<List<?>, List<NURL>> delivered = new ConcurrentHashMap<List<?>, List<NURL>>();
+    // 当前线程正在订阅的NURL，订阅过程中的通知同步回调，保证订阅返回前已完成第一次通知
+    private final ThreadLocal<NURL> subscribing = new ThreadLocal<NURL>();
 
     @Override
     public void connect(NURL nurl) {
@@ -74,6 +77,21 @@ public abstract class AbstractMreg implements Mreg {
             }
         }
         this.file = file;
+        this.cacheStore = file == null ? null : new MregCacheStore(file);
+        if (cacheStore != null && !syncSaveFile) {
+            this.cacheFlusher = new MregCacheFlusher("LocalSaveMregCache", nurl.getParameter(Consts.SAVE_DEBOUNCE_KEY, Consts.DEFAULT_SAVE_DEBOUNCE),
+                    nurl.getParameter(Consts.SAVE_MAX_DELAY_KEY, Consts.DEFAULT_SAVE_MAX_DELAY), new MregCacheFlusher.Writer() {
+                @Override
+                public boolean write(NURL nurl) throws IOException {
+                    return writeCache(nurl);
+                }
+            });
+        }
+        this.nurlCache = new NurlCache(nurl.getParameter(Consts.PARSE_CACHE_KEY, Consts.DEFAULT_PARSE_CACHE));
+        if (nurl.getParameter(Consts.LISTENER_ASYNC_KEY, true)) {
+            this.notifyDispatcher = new NotifyDispatcher("MregListenerNotify", nurl.getParameter(Consts.LISTENER_THREADS_KEY, Consts.DEFAULT_LISTENER_THREADS),
+                    nurl.getParameter(Consts.LISTENER_QUEUES_KEY, Consts.DEFAULT_LISTENER_QUEUES));
+        }
         loadProperties();
         notify(nurl.getBackupUrls());
     }
@@ -99,135 +117,117 @@ public abstract class AbstractMreg implements Mreg {
         return file;
     }
 
-    public Properties getCacheProperties() {
-        return properties;
+    public MregCacheStore getCacheStore() {
+        return cacheStore;
     }
 
     public AtomicLong getLastCacheChanged(){
         return lastCacheChanged;
     }
 
-    private class SaveProperties implements Runnable{
-        private long version;
-        private SaveProperties(long version){
-            this.version = version;
-        }
-        public void run() {
-            doSaveProperties(version);
-        }
+    /**
+     * 获取订阅条件的预编译匹配器，已订阅的条件复用索引中的匹配器
+     *
+     * @param nurl 订阅条件
+     * @return
+     */
+    protected NurlMatcher getMatcher(NURL nurl) {
+        return subscriptionIndex.get(nurl);
     }
-    
-    public void doSaveProperties(long version) {
-        if(version < lastCacheChanged.get()){
-            return;
-        }
-        if (file == null) {
-            return;
+
+    public MregCacheFlusher getCacheFlusher() {
+        return cacheFlusher;
+    }
+
+    public NurlCache getNurlCache() {
+        return nurlCache;
+    }
+
+    public NotifyDispatcher getNotifyDispatcher() {
+        return notifyDispatcher;
+    }
+
+    /**
+     * 标记当前线程正在订阅
+     *
+     * @param nurl 订阅条件，null表示订阅结束
+     * @return 之前的标记，订阅结束时用于恢复(监听器中嵌套订阅)
+     */
+    protected NURL markSubscribing(NURL nurl) {
+        NURL previous = subscribing.get();
+        if (nurl == null) {
+            subscribing.remove();
+        } else {
+            subscribing.set(nurl);
         }
-        Properties newProperties = new Properties();
-        // 保存之前先读取一遍，防止多个注册中心之间冲突
-        InputStream in = null;
+        return previous;
+    }
+
+    /**
+     * 将订阅的当前通知结果追加到磁盘缓存，与已缓存的快照相同时忽略
+     * 
+     * @param nurl 订阅条件
+     * @return 是否实际写入
+     */
+    public boolean doSaveProperties(NURL nurl) {
         try {
-            if (file.exists()) {
-                in = new FileInputStream(file);
-                newProperties.load(in);
-            }
+            return writeCache(nurl);
         } catch (Throwable e) {
-            logger.warn("Failed to load mreg store file, cause: " + e.getMessage(), e);
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    logger.warn(e.getMessage(), e);
-                }
-            }
-        }     
+            logger.warn("Failed to save mreg store file, cause: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private boolean writeCache(NURL nurl) throws IOException {
+        if (cacheStore == null) {
+            return false;
+        }
         
-        // 保存
-        try {
-			newProperties.putAll(properties);
-            File lockfile = new File(file.getAbsolutePath() + ".lock");
-            if (!lockfile.exists()) {
-            	lockfile.createNewFile();
-            }
-            RandomAccessFile raf = new RandomAccessFile(lockfile, "rw");
-            try {
-                FileChannel channel = raf.getChannel();
-                try {
-                    FileLock lock = channel.tryLock();
-                	if (lock == null) {
-                        throw new IOException("Can not lock the mreg cache file " + file.getAbsolutePath() + ", ignore and retry later, maybe multi java process use the file, please config: mreg.file=xxx.properties");
-                    }
-                	// 保存
-                    try {
-                    	if (! file.exists()) {
-                            file.createNewFile();
-                        }
-                        FileOutputStream outputFile = new FileOutputStream(file);  
-                        try {
-                            newProperties.store(outputFile, "Ms Registry Cache");
-                        } finally {
-                        	outputFile.close();
-                        }
-                    } finally {
-                    	lock.release();
-                    }
-                } finally {
-                    channel.close();
+        List<String> values = new ArrayList<String>();
+        Map<String, List<NURL>> categoryNotified = notified.get(nurl);
+        if (categoryNotified != null) {
+            for (List<NURL> us : categoryNotified.values()) {
+                for (NURL u : us) {
+                    values.add(u.toFullString());
                 }
-            } finally {
-                raf.close();
             }
-        } catch (Throwable e) {
-            if (version < lastCacheChanged.get()) {
-                return;
-            } else {
-                mregCacheExecutor.execute(new SaveProperties(lastCacheChanged.incrementAndGet()));
-            }
-            logger.warn("Failed to save mreg store file, cause: " + e.getMessage(), e);
         }
+        return cacheStore.put(nurl.getServiceKey(), values);
     }
 
     private void loadProperties() {
-        if (file != null && file.exists()) {
-            InputStream in = null;
-            try {
-                in = new FileInputStream(file);
-                properties.load(in);
-                if (logger.isInfoEnabled()) {
-                    logger.info("Load mreg store file " + file + ", data: " + properties);
-                }
-            } catch (Throwable e) {
-                logger.warn("Failed to load mreg store file " + file, e);
-            } finally {
-                if (in != null) {
-                    try {
-                        in.close();
-                    } catch (IOException e) {
-                        logger.warn(e.getMessage(), e);
-                    }
-                }
-            }
+        if (cacheStore != null) {
+            cacheStore.load();
         }
     }
 
     public List<NURL> getCacheUrls(NURL nurl) {
-        for (Map.Entry<Object, Object> entry : properties.entrySet()) {
-            String key = (String) entry.getKey();
-            String value = (String) entry.getValue();
-            if (key != null && key.length() > 0 && key.equals(nurl.getServiceKey())
-                    && (Character.isLetter(key.charAt(0)) || key.charAt(0) == '_')
-                    && value != null && value.length() > 0) {
-                String[] arr = value.trim().split(NURL_SPLIT);
-                List<NURL> nurls = new ArrayList<NURL>();
-                for (String u : arr) {
-                    nurls.add(NURL.valueOf(u));
-                }
-                return nurls;
-            }
+        if (cacheStore == null) {
+            return null;
         }
-        return null;
+        
+        String key = nurl.getServiceKey();
+        if (key == null || key.length() == 0
+                || ! (Character.isLetter(key.charAt(0)) || key.charAt(0) == '_')) {
+            return null;
+        }
+        List<NURL> nurls = cacheUrls.get(key);
+        if (nurls != null) {
+            return nurls;
+        }
+        
+        // 首次查找时从磁盘缓存解析
+        List<String> values = cacheStore.get(key);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        List<NURL> parsed = new ArrayList<NURL>(values.size());
+        for (String u : values) {
+            parsed.add(nurlCache.valueOf(u));
+        }
+        List<NURL> result = Collections.unmodifiableList(parsed);
+        nurls = cacheUrls.putIfAbsent(key, result);
+        return nurls == null ? result : nurls;
     }
 
     @Override
@@ -301,6 +301,7 @@ public abstract class AbstractMreg implements Mreg {
             listeners = subscribed.get(nurl);
         }
         listeners.add(listener);
+        subscriptionIndex.add(nurl);
     }
 
     @Override
@@ -317,6 +318,24 @@ public abstract class AbstractMreg implements Mreg {
         Set<CoonListener<NURL>> listeners = subscribed.get(nurl);
         if (listeners != null) {
             listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                // 最后一个监听器已移除，不再匹配该订阅；并发订阅时重新加入
+                subscriptionIndex.remove(nurl);
+                if (! listeners.isEmpty()) {
+                    subscriptionIndex.add(nurl);
+                }
+            }
+        }
+        if (notifyDispatcher != null) {
+            notifyDispatcher.cancel(nurl, listener);
+        }
+        if (listener instanceof DeltaCoonListener) {
+            for (Iterator<List<?>> it = delivered.keySet().iterator(); it.hasNext();) {
+                List<?> key = it.next();
+                if (nurl.equals(key.get(0)) && listener == key.get(1)) {
+                    it.remove();
+                }
+            }
         }
     }
 
@@ -358,14 +377,9 @@ public abstract class AbstractMreg implements Mreg {
     protected void notify(List<NURL> nurls) {
         if(nurls == null || nurls.isEmpty()) return;
         
-        for (Map.Entry<NURL, Set<CoonListener<NURL>>> entry : getSubscribed().entrySet()) {
-        	NURL nurl = entry.getKey();
-            
-            if(! MregCommon.isMatch(nurl, nurls.get(0))) {
-                continue;
-            }
-            
-            Set<CoonListener<NURL>> listeners = entry.getValue();
+        // 只匹配同接口及通配订阅
+        for (NURL nurl : subscriptionIndex.lookup(nurls.get(0))) {
+            Set<CoonListener<NURL>> listeners = getSubscribed().get(nurl);
             if (listeners != null) {
                 for (CoonListener<NURL> listener : listeners) {
                     try {
@@ -394,8 +408,9 @@ public abstract class AbstractMreg implements Mreg {
             logger.info("Notify nurls for subscribe nurl " + nurl + ", nurls: " + nurls);
         }
         Map<String, List<NURL>> result = new HashMap<String, List<NURL>>();
+        NurlMatcher matcher = subscriptionIndex.get(nurl);
         for (NURL u : nurls) {
-            if (MregCommon.isMatch(nurl, u)) {
+            if (matcher.isMatch(u)) {
             	String category = u.getParameter(Consts.CATEGORY_KEY, Consts.DEFAULT_CATEGORY);
             	List<NURL> categoryList = result.get(category);
             	if (categoryList == null) {
@@ -418,34 +433,112 @@ public abstract class AbstractMreg implements Mreg {
             List<NURL> categoryList = entry.getValue();
             categoryNotified.put(category, categoryList);
             saveProperties(nurl);
-            listener.notify(categoryList);
+            if (notifyDispatcher == null) {
+                deliver(nurl, listener, category, categoryList);
+            } else {
+                // 同一订阅串行回调，排队中的同分类全量通知只回调最新一次
+                notifyDispatcher.dispatch(nurl, Arrays.asList(nurl, listener, category),
+                        new Delivery(nurl, listener, category, categoryList), subscribing.get() != null);
+            }
+        }
+    }
+
+    /**
+     * 异步回调监听器失败
+     *
+     * @param nurl 订阅条件
+     * @param listener 监听器
+     * @param nurls 本次通知的数据
+     * @param t 异常
+     */
+    protected void notifyFailed(NURL nurl, CoonListener<NURL> listener, List<NURL> nurls, Throwable t) {
+        logger.error("Failed to notify for subscribe " + nurl + ", nurls: " + nurls + ", cause: " + t.getMessage(), t);
+    }
+
+    /**
+     * 回调监听器，增量监听器只回调与其上一次收到的数据相比的变化部分
+     */
+    private void deliver(NURL nurl, CoonListener<NURL> listener, String category, List<NURL> nurls) {
+        if (! (listener instanceof DeltaCoonListener)) {
+            listener.notify(nurls);
+            return;
+        }
+        
+        // 在回调时与上一次实际回调的数据对比，排队中被合并的通知不会丢失变化
+        List<NURL> last = delivered.put(Arrays.asList(nurl, listener, category), nurls);
+        if (last == null) {
+            listener.notify(nurls);
+            return;
+        }
+        List<NURL> added = diff(nurls, last);
+        List<NURL> removed = diff(last, nurls);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        ((DeltaCoonListener<NURL>) listener).notifyDelta(added, removed);
+    }
+
+    private static List<NURL> diff(List<NURL> nurls, List<NURL> others) {
+        Set<NURL> exists = new HashSet<NURL>(others);
+        List<NURL> result = new ArrayList<NURL>();
+        for (NURL u : nurls) {
+            if (! exists.contains(u) && ! Consts.EMPTY_PROTOCOL.equals(u.getProtocol())) {
+                result.add(u);
+            }
+        }
+        return result;
+    }
+
+    private class Delivery implements Runnable {
+        private final NURL nurl;
+        private final CoonListener<NURL> listener;
+        private final String category;
+        private final List<NURL> nurls;
+
+        private Delivery(NURL nurl, CoonListener<NURL> listener, String category, List<NURL> nurls) {
+            this.nurl = nurl;
+            this.listener = listener;
+            this.category = category;
+            this.nurls = nurls;
+        }
+
+        public void run() {
+            if (subscribing.get() != null) {
+                deliver(nurl, listener, category, nurls); // 订阅线程内同步回调，异常直接抛给订阅者
+                return;
+            }
+            try {
+                deliver(nurl, listener, category, nurls);
+            } catch (Throwable t) {
+                notifyFailed(nurl, listener, nurls, t);
+            }
         }
     }
 
     private void saveProperties(NURL nurl) {
-        if (file == null) {
+        if (cacheStore == null) {
             return;
         }
         
         try {
-            StringBuilder buf = new StringBuilder();
+            List<NURL> nurls = new ArrayList<NURL>();
             Map<String, List<NURL>> categoryNotified = notified.get(nurl);
             if (categoryNotified != null) {
                 for (List<NURL> us : categoryNotified.values()) {
-                    for (NURL u : us) {
-                        if (buf.length() > 0) {
-                            buf.append(NURL_SEPARATOR);
-                        }
-                        buf.append(u.toFullString());
-                    }
+                    nurls.addAll(us);
                 }
             }
-            properties.setProperty(nurl.getServiceKey(), buf.toString());
-            long version = lastCacheChanged.incrementAndGet();
-            if (syncSaveFile) {
-                doSaveProperties(version);
+            if (nurls.isEmpty()) {
+                cacheUrls.remove(nurl.getServiceKey());
+            } else {
+                cacheUrls.put(nurl.getServiceKey(), Collections.unmodifiableList(nurls));
+            }
+            
+            lastCacheChanged.incrementAndGet();
+            if (cacheFlusher == null) {
+                doSaveProperties(nurl);
             } else {
-                mregCacheExecutor.execute(new SaveProperties(version));
+                cacheFlusher.mark(nurl);
             }
         } catch (Throwable t) {
             logger.warn(t.getMessage(), t);
@@ -488,6 +581,12 @@ public abstract class AbstractMreg implements Mreg {
                 }
             }
         }
+        if (notifyDispatcher != null) {
+            notifyDispatcher.shutdown();
+        }
+        if (cacheFlusher != null) {
+            cacheFlusher.shutdown();
+        }
     }
 
 }
\ No newline at end of file
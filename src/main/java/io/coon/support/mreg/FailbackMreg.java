@@ -1,23 +1,33 @@
 package io.coon.support.mreg;
 
 import io.coon.support.Consts;
+import io.coon.support.CoonFuture;
 import io.coon.support.CoonListener;
 import io.coon.support.NamedThreadFactory;
+import io.coon.support.mreg.exception.MregException;
 import io.coon.support.mreg.exception.SkipFailbackException;
 import io.neural.NURL;
 import io.neural.micro.ConcurrentHashSet;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -31,6 +41,8 @@ public abstract class FailbackMreg extends AbstractMreg {
     private final ScheduledExecutorService retryExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("MsRegistryFailedRetryTimer", true));
     // 失败重试定时器，定时检查是否有请求失败，如有，无限次重试
     private ScheduledFuture<?> retryFuture;
+    // 批量及异步操作的执行器
+    private ThreadPoolExecutor bulkExecutor;
     private final Set<NURL> failedRegistered = new ConcurrentHashSet<NURL>();
     private final Set<NURL> failedUnregistered = new ConcurrentHashSet<NURL>();
     private final ConcurrentMap<NURL, Set<CoonListener<NURL>>> failedSubscribed = new ConcurrentHashMap<NURL, Set<CoonListener<NURL>>>();
@@ -40,6 +52,10 @@ public abstract class FailbackMreg extends AbstractMreg {
     @Override
     public void connect(NURL nurl) {
         super.connect(nurl);
+        int bulkThreads = nurl.getParameter(Consts.BULK_THREADS_KEY, Consts.DEFAULT_BULK_THREADS);
+        this.bulkExecutor = new ThreadPoolExecutor(bulkThreads, bulkThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("MregBulk", true));
+        this.bulkExecutor.allowCoreThreadTimeOut(true);
         int retryPeriod = nurl.getParameter(Consts.REGISTRY_RETRY_PERIOD_KEY, Consts.DEFAULT_REGISTRY_RETRY_PERIOD);
         this.retryFuture = retryExecutor.scheduleWithFixedDelay(new Runnable() {
             public void run() {
@@ -109,25 +125,61 @@ public abstract class FailbackMreg extends AbstractMreg {
             // 向服务器端发送注册请求
             doRegister(url);
         } catch (Exception e) {
-            Throwable t = e;
+            registerFailed(url, e);
+        }
+    }
 
-            // 如果开启了启动时检测，则直接抛出异常
-            boolean check = getNurl().getParameter(Consts.CHECK_KEY, true)
-                    && url.getParameter(Consts.CHECK_KEY, true)
-                    && ! Consts.CONSUMER_PROTOCOL.equals(url.getProtocol());
-            boolean skipFailback = t instanceof SkipFailbackException;
-            if (check || skipFailback) {
-                if(skipFailback) {
-                    t = t.getCause();
+    @Override
+    public void registerAll(Collection<NURL> urls) {
+        if (urls == null) {
+            throw new IllegalArgumentException("register urls == null");
+        }
+        List<NURL> list = new ArrayList<NURL>(new LinkedHashSet<NURL>(urls));
+        for (NURL url : list) {
+            super.register(url);
+            failedRegistered.remove(url);
+            failedUnregistered.remove(url);
+        }
+        if (list.isEmpty()) {
+            return;
+        }
+        
+        // 向服务器端批量发送注册请求，失败的数据逐条处理
+        Map<NURL, Exception> failures = doRegisterAll(list);
+        IllegalStateException error = null;
+        for (Map.Entry<NURL, Exception> entry : failures.entrySet()) {
+            try {
+                registerFailed(entry.getKey(), entry.getValue());
+            } catch (IllegalStateException e) {
+                if (error == null) {
+                    error = e;
                 }
-                throw new IllegalStateException("Failed to register " + url + " to mreg " + getNurl().getAddress() + ", cause: " + t.getMessage(), t);
-            } else {
-                logger.error("Failed to register " + url + ", waiting for retry, cause: " + t.getMessage(), t);
             }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void registerFailed(NURL url, Exception e) {
+        Throwable t = e;
 
-            // 将失败的注册请求记录到失败列表，定时重试
-            failedRegistered.add(url);
+        // 如果开启了启动时检测，则直接抛出异常
+        boolean check = getNurl().getParameter(Consts.CHECK_KEY, true)
+                && url.getParameter(Consts.CHECK_KEY, true)
+                && ! Consts.CONSUMER_PROTOCOL.equals(url.getProtocol());
+        boolean skipFailback = t instanceof SkipFailbackException;
+        if (check || skipFailback) {
+            if(skipFailback) {
+                t = t.getCause();
+            }
+            throw new IllegalStateException("Failed to register " + url + " to mreg " + getNurl().getAddress() + ", cause: " + t.getMessage(), t);
+        } else {
+            logger.error("Failed to register " + url + ", waiting for retry, cause: " + t.getMessage(), t);
         }
+
+        // 将失败的注册请求记录到失败列表，定时重试
+        failedRegistered.add(url);
     }
 
     @Override
@@ -139,31 +191,82 @@ public abstract class FailbackMreg extends AbstractMreg {
             // 向服务器端发送取消注册请求
             doUnregister(url);
         } catch (Exception e) {
-            Throwable t = e;
+            unregisterFailed(url, e);
+        }
+    }
 
-            // 如果开启了启动时检测，则直接抛出异常
-            boolean check = getNurl().getParameter(Consts.CHECK_KEY, true)
-                    && url.getParameter(Consts.CHECK_KEY, true)
-                    && ! Consts.CONSUMER_PROTOCOL.equals(url.getProtocol());
-            boolean skipFailback = t instanceof SkipFailbackException;
-            if (check || skipFailback) {
-                if(skipFailback) {
-                    t = t.getCause();
+    private void unregisterFailed(NURL url, Exception e) {
+        Throwable t = e;
+
+        // 如果开启了启动时检测，则直接抛出异常
+        boolean check = getNurl().getParameter(Consts.CHECK_KEY, true)
+                && url.getParameter(Consts.CHECK_KEY, true)
+                && ! Consts.CONSUMER_PROTOCOL.equals(url.getProtocol());
+        boolean skipFailback = t instanceof SkipFailbackException;
+        if (check || skipFailback) {
+            if(skipFailback) {
+                t = t.getCause();
+            }
+            throw new IllegalStateException("Failed to unregister " + url + " to mreg " + getNurl().getAddress() + ", cause: " + t.getMessage(), t);
+        } else {
+            logger.error("Failed to uregister " + url + ", waiting for retry, cause: " + t.getMessage(), t);
+        }
+
+        // 将失败的取消注册请求记录到失败列表，定时重试
+        failedUnregistered.add(url);
+    }
+
+    @Override
+    public CoonFuture<Void> registerAsync(final NURL url) {
+        super.register(url);
+        failedRegistered.remove(url);
+        failedUnregistered.remove(url);
+        final CoonFuture<Void> future = new CoonFuture<Void>();
+        doRegisterAsync(url).addListener(new CoonFuture.Listener<Void>() {
+            public void complete(CoonFuture<Void> result) {
+                try {
+                    if (! result.isSuccess()) {
+                        registerFailed(url, toException(result.getCause()));
+                    }
+                    future.set(null);
+                } catch (Exception e) {
+                    future.fail(e);
                 }
-                throw new IllegalStateException("Failed to unregister " + url + " to mreg " + getNurl().getAddress() + ", cause: " + t.getMessage(), t);
-            } else {
-                logger.error("Failed to uregister " + url + ", waiting for retry, cause: " + t.getMessage(), t);
             }
+        });
+        return future;
+    }
 
-            // 将失败的取消注册请求记录到失败列表，定时重试
-            failedUnregistered.add(url);
-        }
+    @Override
+    public CoonFuture<Void> unregisterAsync(final NURL url) {
+        super.unregister(url);
+        failedRegistered.remove(url);
+        failedUnregistered.remove(url);
+        final CoonFuture<Void> future = new CoonFuture<Void>();
+        doUnregisterAsync(url).addListener(new CoonFuture.Listener<Void>() {
+            public void complete(CoonFuture<Void> result) {
+                try {
+                    if (! result.isSuccess()) {
+                        unregisterFailed(url, toException(result.getCause()));
+                    }
+                    future.set(null);
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private Exception toException(Throwable t) {
+        return t instanceof Exception ? (Exception) t : new MregException(t.getMessage(), t);
     }
 
     @Override
     public void subscribe(NURL url, CoonListener<NURL> listener) {
         super.subscribe(url, listener);
         removeFailedSubscribed(url, listener);
+        NURL previous = markSubscribing(url);
         try {
             // 向服务器端发送订阅请求
             doSubscribe(url, listener);
@@ -191,6 +294,40 @@ public abstract class FailbackMreg extends AbstractMreg {
 
             // 将失败的订阅请求记录到失败列表，定时重试
             addFailedSubscribed(url, listener);
+        } finally {
+            markSubscribing(previous);
+        }
+    }
+
+    @Override
+    public void subscribeAll(Map<NURL, CoonListener<NURL>> subscriptions) {
+        if (subscriptions == null) {
+            throw new IllegalArgumentException("subscribe subscriptions == null");
+        }
+        
+        // 各订阅并行执行，失败重试由subscribe自行记录
+        List<NURL> urls = new ArrayList<NURL>(subscriptions.size());
+        List<Callable<Exception>> tasks = new ArrayList<Callable<Exception>>(subscriptions.size());
+        for (Map.Entry<NURL, CoonListener<NURL>> entry : subscriptions.entrySet()) {
+            final NURL url = entry.getKey();
+            final CoonListener<NURL> listener = entry.getValue();
+            urls.add(url);
+            tasks.add(new Callable<Exception>() {
+                public Exception call() {
+                    try {
+                        subscribe(url, listener);
+                        return null;
+                    } catch (Exception e) {
+                        return e;
+                    }
+                }
+            });
+        }
+        for (Exception e : invokeAll(urls, tasks).values()) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
@@ -227,6 +364,36 @@ public abstract class FailbackMreg extends AbstractMreg {
         }
     }
 
+    @Override
+    public CoonFuture<Void> subscribeAsync(final NURL url, final CoonListener<NURL> listener) {
+        // 订阅需阻塞至第一次通知完成，在执行器中执行
+        return CoonFuture.submit(bulkExecutor, new Callable<Void>() {
+            public Void call() {
+                subscribe(url, listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public CoonFuture<Void> unsubscribeAsync(final NURL url, final CoonListener<NURL> listener) {
+        return CoonFuture.submit(bulkExecutor, new Callable<Void>() {
+            public Void call() {
+                unsubscribe(url, listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public CoonFuture<List<NURL>> lookupAsync(final NURL url) {
+        return CoonFuture.submit(bulkExecutor, new Callable<List<NURL>>() {
+            public List<NURL> call() {
+                return lookup(url);
+            }
+        });
+    }
+
     @Override
     protected void notify(NURL url, CoonListener<NURL> listener, List<NURL> urls) {
         if (url == null) {
@@ -252,6 +419,18 @@ public abstract class FailbackMreg extends AbstractMreg {
     protected void doNotify(NURL url, CoonListener<NURL> listener, List<NURL> urls) {
     	super.notify(url, listener, urls);
     }
+
+    @Override
+    protected void notifyFailed(NURL url, CoonListener<NURL> listener, List<NURL> urls, Throwable t) {
+        // 异步回调失败同样记录到失败列表，定时重试
+        Map<CoonListener<NURL>, List<NURL>> listeners = failedNotified.get(url);
+        if (listeners == null) {
+            failedNotified.putIfAbsent(url, new ConcurrentHashMap<CoonListener<NURL>, List<NURL>>());
+            listeners = failedNotified.get(url);
+        }
+        listeners.put(listener, urls);
+        logger.error("Failed to notify for subscribe " + url + ", waiting for retry, cause: " + t.getMessage(), t);
+    }
     
     @Override
     protected void recover() throws Exception {
@@ -414,6 +593,11 @@ public abstract class FailbackMreg extends AbstractMreg {
     @Override
     public void destroy() {
         super.destroy();
+        try {
+            bulkExecutor.shutdown();
+        } catch (Throwable t) {
+            logger.warn(t.getMessage(), t);
+        }
         try {
             retryFuture.cancel(true);
         } catch (Throwable t) {
@@ -422,6 +606,101 @@ public abstract class FailbackMreg extends AbstractMreg {
     }
 
     // ==== 模板方法 ====
+    /**
+     * 批量注册，缺省并行执行{@link #doRegister(NURL)}
+     * 
+     * @param urls 注册信息列表
+     * @return 失败的注册信息及其异常
+     */
+    protected Map<NURL, Exception> doRegisterAll(List<NURL> urls) {
+        List<Callable<Exception>> tasks = new ArrayList<Callable<Exception>>(urls.size());
+        for (final NURL url : urls) {
+            tasks.add(new Callable<Exception>() {
+                public Exception call() {
+                    try {
+                        doRegister(url);
+                        return null;
+                    } catch (Exception e) {
+                        return e;
+                    }
+                }
+            });
+        }
+        return invokeAll(urls, tasks);
+    }
+
+    /**
+     * 异步注册，缺省在执行器中执行{@link #doRegister(NURL)}
+     * 
+     * @param url 注册信息
+     * @return 注册结果
+     */
+    protected CoonFuture<Void> doRegisterAsync(final NURL url) {
+        return CoonFuture.submit(bulkExecutor, new Callable<Void>() {
+            public Void call() {
+                doRegister(url);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 异步取消注册，缺省在执行器中执行{@link #doUnregister(NURL)}
+     * 
+     * @param url 注册信息
+     * @return 取消注册结果
+     */
+    protected CoonFuture<Void> doUnregisterAsync(final NURL url) {
+        return CoonFuture.submit(bulkExecutor, new Callable<Void>() {
+            public Void call() {
+                doUnregister(url);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 并行执行并等待所有任务完成
+     * 
+     * @return 失败的数据及其异常
+     */
+    private Map<NURL, Exception> invokeAll(List<NURL> urls, List<Callable<Exception>> tasks) {
+        Map<NURL, Exception> failures = new LinkedHashMap<NURL, Exception>();
+        if (tasks.size() == 1) {
+            try {
+                Exception e = tasks.get(0).call();
+                if (e != null) {
+                    failures.put(urls.get(0), e);
+                }
+            } catch (Exception e) {
+                failures.put(urls.get(0), e);
+            }
+            return failures;
+        }
+        
+        List<Future<Exception>> futures;
+        try {
+            futures = bulkExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for bulk operations of mreg " + getNurl().getAddress(), e);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                Exception e = futures.get(i).get();
+                if (e != null) {
+                    failures.put(urls.get(i), e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for bulk operations of mreg " + getNurl().getAddress(), e);
+            } catch (ExecutionException e) {
+                failures.put(urls.get(i), new MregException(e.getCause().getMessage(), e.getCause()));
+            }
+        }
+        return failures;
+    }
+
     protected abstract void doRegister(NURL url);
     protected abstract void doUnregister(NURL url);
     protected abstract void doSubscribe(NURL url, CoonListener<NURL> listener);
@@ -0,0 +1,106 @@
+package io.coon.support.mreg;
+
+import io.neural.NURL;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询结果近端缓存<br>
+ * <br>
+ * 1. 缓存未订阅服务的查询结果，在TTL内重复查询不再访问注册中心，TTL即允许的最大过期时间。<br>
+ * 2. 容量有界，超出时先清理过期数据，仍超出时清空。<br>
+ *
+ * @author lry
+ */
+public class LookupCache {
+
+	private final long ttl;
+	private final int capacity;
+	private final ConcurrentMap<NURL, Entry> cache = new ConcurrentHashMap<NURL, Entry>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public LookupCache(long ttl, int capacity) {
+		this.ttl = ttl;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param nurl 查询条件
+	 * @return 未过期的查询结果，没有时返回null
+	 */
+	public List<NURL> get(NURL nurl) {
+		if (ttl <= 0) {
+			return null;
+		}
+
+		Entry entry = cache.get(nurl);
+		if (entry == null || entry.expires < System.currentTimeMillis()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.nurls;
+	}
+
+	public void put(NURL nurl, List<NURL> nurls) {
+		if (ttl <= 0) {
+			return;
+		}
+
+		if (cache.size() >= capacity) {
+			this.purge();
+		}
+		cache.put(nurl, new Entry(Collections.unmodifiableList(new ArrayList<NURL>(nurls)), System.currentTimeMillis() + ttl));
+	}
+
+	private void purge() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<NURL, Entry>> it = cache.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getValue().expires < now) {
+				it.remove();
+			}
+		}
+		if (cache.size() >= capacity) {
+			cache.clear();
+		}
+	}
+
+	public void invalidate(NURL nurl) {
+		cache.remove(nurl);
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private static class Entry {
+		private final List<NURL> nurls;
+		private final long expires;
+
+		private Entry(List<NURL> nurls, long expires) {
+			this.nurls = nurls;
+			this.expires = expires;
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+package io.coon.support.mreg;
+
+import io.coon.support.NamedThreadFactory;
+import io.neural.NURL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 磁盘缓存延迟合并写入<br>
+ * <br>
+ * 1. 变更只标记脏服务，在防抖窗口内无新变更时统一写入一次，每个脏服务只写最新的通知结果。<br>
+ * 2. 持续变更时最迟在最大延迟到达时写入，避免缓存长期落后。<br>
+ * 3. 写入失败的服务重新标记为脏，按最大延迟重试，期间有新变更时以新变更为准。<br>
+ * 4. 关闭时同步写入所有脏服务。<br>
+ *
+ * @author lry
+ */
+public class MregCacheFlusher {
+
+	private static final Logger logger = LoggerFactory.getLogger(MregCacheFlusher.class);
+
+	private final long debounce;
+	private final long maxDelay;
+	private final Writer writer;
+	private final ScheduledExecutorService executor;
+	// 服务Key -> 订阅条件
+	private final ConcurrentMap<String, NURL> dirty = new ConcurrentHashMap<String, NURL>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	// 本轮第一次和最后一次变更的时间
+	private volatile long firstChanged;
+	private volatile long lastChanged;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	public MregCacheFlusher(String name, long debounce, long maxDelay, Writer writer) {
+		this.debounce = Math.max(0, debounce);
+		this.maxDelay = Math.max(this.debounce, maxDelay);
+		this.writer = writer;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(name, true));
+	}
+
+	/**
+	 * 标记服务的缓存需要写入
+	 *
+	 * @param nurl 订阅条件
+	 */
+	public void mark(NURL nurl) {
+		requests.incrementAndGet();
+		long now = System.currentTimeMillis();
+		lastChanged = now;
+		dirty.put(nurl.getServiceKey(), nurl);
+		if (scheduled.compareAndSet(false, true)) {
+			firstChanged = now;
+			this.schedule(debounce);
+		}
+	}
+
+	private void schedule(long delay) {
+		try {
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					tick();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (Throwable t) { // 已关闭
+			scheduled.set(false);
+			logger.warn("Failed to schedule mreg cache flush, cause: " + t.getMessage());
+		}
+	}
+
+	private void tick() {
+		long now = System.currentTimeMillis();
+		long due = Math.min(lastChanged + debounce, firstChanged + maxDelay);
+		if (now < due) {
+			this.schedule(due - now);
+			return;
+		}
+
+		scheduled.set(false);
+		boolean failed = this.doFlush();
+		// 写入期间到达的变更或写入失败的服务需要再次调度，失败时按最大延迟重试
+		if (!dirty.isEmpty() && scheduled.compareAndSet(false, true)) {
+			firstChanged = System.currentTimeMillis();
+			this.schedule(failed ? maxDelay : debounce);
+		}
+	}
+
+	/**
+	 * 立即写入所有脏服务
+	 */
+	public void flush() {
+		this.doFlush();
+	}
+
+	/**
+	 * @return 是否有服务写入失败
+	 */
+	private synchronized boolean doFlush() {
+		if (dirty.isEmpty()) {
+			return false;
+		}
+
+		flushes.incrementAndGet();
+		boolean failed = false;
+		List<String> keys = new ArrayList<String>(dirty.keySet());
+		for (String key : keys) {
+			NURL nurl = dirty.remove(key);
+			if (nurl == null) {
+				continue;
+			}
+
+			try {
+				if (writer.write(nurl)) {
+					writes.incrementAndGet();
+				}
+			} catch (Throwable t) {
+				// 重新标记，期间已有新变更时以新变更为准
+				dirty.putIfAbsent(key, nurl);
+				failures.incrementAndGet();
+				failed = true;
+				logger.warn("Failed to flush mreg cache of " + key + ", retry later, cause: " + t.getMessage(), t);
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * 写入剩余的脏服务并关闭
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		this.flush();
+	}
+
+	public int getDirtyCount() {
+		return dirty.size();
+	}
+
+	/**
+	 * 写入请求数，即变更标记次数
+	 *
+	 * @return
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public long getFlushCount() {
+		return flushes.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * 实际写入磁盘的服务快照数
+	 *
+	 * @return
+	 */
+	public long getWriteCount() {
+		return writes.get();
+	}
+
+	/**
+	 * 合并节省的写入次数
+	 *
+	 * @return
+	 */
+	public long getSavedCount() {
+		return Math.max(0, requests.get() - writes.get() - dirty.size());
+	}
+
+	/**
+	 * 写入一个服务的缓存
+	 */
+	public interface Writer {
+
+		/**
+		 * @param nurl 订阅条件
+		 * @return 是否实际写入
+		 * @throws Exception 写入失败，服务重新标记为脏并稍后重试
+		 */
+		boolean write(NURL nurl) throws Exception;
+
+	}
+
+}
@@ -0,0 +1,454 @@
+package io.coon.support.mreg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 注册中心本地磁盘缓存<br>
+ * <br>
+ * 1. 文件为只追加的服务快照日志：文件头 + 若干记录，每条记录为[长度][CRC32][服务Key和该服务全部NURL]，同一服务以最后一条记录为准。<br>
+ * 2. 启动时一次读入堆内存，只扫描记录头建立服务Key索引，记录内容在首次查找时才校验并解码；不保留文件映射，追加截断和原子替换不受影响(Windows下映射未释放时两者都会失败)。<br>
+ * 3. 失效记录过多时合并压缩：重新扫描文件(包含其它进程追加的记录)，只保留每个服务的最新快照，写入临时文件后原子替换。<br>
+ * 4. 追加和压缩均持有[file].lock文件锁，兼容多进程共用一个缓存文件；旧版本的Properties缓存文件在加载时自动转换。<br>
+ *
+ * @author lry
+ */
+public class MregCacheStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(MregCacheStore.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	// 文件头：魔数"MREG"和格式版本
+	private static final int MAGIC = 0x4D524547;
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+	// 记录头：内容长度和CRC32
+	private static final int RECORD_HEADER_LENGTH = 8;
+	// 记录数超过存活服务数的倍数时压缩
+	private static final int COMPACT_FACTOR = 4;
+	private static final int COMPACT_MIN_RECORDS = 1024;
+	// 同一JVM内多个注册中心实例可能共用一个缓存文件，文件锁不能在同一JVM内重入
+	private static final ConcurrentMap<String, Object> MUTEXES = new ConcurrentHashMap<String, Object>();
+
+	private final File file;
+	private final File lockFile;
+	private final Object mutex;
+	// 服务Key -> 最新快照
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	// 加载时文件的有效长度和实际长度，尾部不完整记录在下次追加前截掉
+	private long validLength;
+	private long loadedLength;
+	private int records;
+
+	public MregCacheStore(File file) {
+		this.file = file;
+		this.lockFile = new File(file.getAbsolutePath() + ".lock");
+		String path = file.getAbsolutePath();
+		MUTEXES.putIfAbsent(path, new Object());
+		this.mutex = MUTEXES.get(path);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 加载缓存文件，只建立索引不解码
+	 */
+	public synchronized void load() {
+		entries.clear();
+		records = 0;
+		validLength = loadedLength = 0;
+		if (!file.exists() || file.length() == 0) {
+			return;
+		}
+
+		try {
+			long size = file.length();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("The mreg store file " + file + " is too large: " + size);
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+				this.loadLegacy();
+				return;
+			}
+
+			this.loadedLength = buffer.limit();
+			this.validLength = this.scan(buffer, entries);
+			if (logger.isInfoEnabled()) {
+				logger.info("Load mreg store file " + file + ", services: " + entries.size() + ", records: " + records);
+			}
+		} catch (Throwable t) {
+			logger.warn("Failed to load mreg store file " + file + ", cause: " + t.getMessage(), t);
+		}
+	}
+
+	/**
+	 * 扫描记录头建立索引
+	 *
+	 * @return 有效长度，其后为不完整的记录
+	 */
+	private long scan(ByteBuffer buffer, Map<String, Entry> index) {
+		int position = HEADER_LENGTH;
+		int limit = buffer.limit();
+		while (position + RECORD_HEADER_LENGTH <= limit) {
+			int length = buffer.getInt(position);
+			if (length < 4 || position + RECORD_HEADER_LENGTH + length > limit) {
+				logger.warn("Ignore incomplete record at " + position + " of mreg store file " + file);
+				break;
+			}
+
+			int payload = position + RECORD_HEADER_LENGTH;
+			int keyLength = buffer.getInt(payload);
+			if (keyLength < 0 || keyLength > length - 4) {
+				logger.warn("Ignore broken record at " + position + " of mreg store file " + file);
+				break;
+			}
+			byte[] key = new byte[keyLength];
+			ByteBuffer slice = buffer.duplicate();
+			slice.position(payload + 4);
+			slice.get(key);
+			index.put(new String(key, UTF_8), new Entry(buffer, position));
+			records++;
+			position = payload + length;
+		}
+
+		return position;
+	}
+
+	private void loadLegacy() throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+
+		Map<String, List<String>> snapshots = new LinkedHashMap<String, List<String>>();
+		for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+			String value = ((String) entry.getValue()).trim();
+			List<String> nurls = new ArrayList<String>();
+			if (value.length() > 0) {
+				Collections.addAll(nurls, value.split("\\s+"));
+			}
+			snapshots.put((String) entry.getKey(), nurls);
+		}
+		for (Map.Entry<String, List<String>> entry : snapshots.entrySet()) {
+			entries.put(entry.getKey(), new Entry(Collections.unmodifiableList(entry.getValue())));
+		}
+
+		synchronized (mutex) {
+			FileLock lock = this.lock();
+			try {
+				this.rewrite(snapshots);
+			} finally {
+				this.unlock(lock);
+			}
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info("Convert legacy mreg store file " + file + ", services: " + snapshots.size());
+		}
+	}
+
+	/**
+	 * 获取服务快照，首次获取时校验并解码
+	 *
+	 * @param key 服务Key
+	 * @return 服务的全部NURL字符串，不存在或记录损坏时返回null
+	 */
+	public synchronized List<String> get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+
+		if (entry.values == null) {
+			try {
+				entry.values = Collections.unmodifiableList(decode(entry.buffer, entry.position));
+				entry.buffer = null;
+			} catch (IOException e) {
+				logger.warn("Ignore broken record of service " + key + " in mreg store file " + file + ", cause: " + e.getMessage());
+				entries.remove(key);
+				return null;
+			}
+		}
+
+		return entry.values;
+	}
+
+	public synchronized Set<String> keys() {
+		return Collections.unmodifiableSet(new HashSet<String>(entries.keySet()));
+	}
+
+	/**
+	 * 追加服务快照，与当前快照相同时忽略
+	 *
+	 * @param key 服务Key
+	 * @param values 服务的全部NURL字符串
+	 * @return 是否写入
+	 * @throws IOException
+	 */
+	public synchronized boolean put(String key, List<String> values) throws IOException {
+		List<String> current = this.get(key);
+		if (current != null && current.equals(values)) {
+			return false;
+		}
+
+		byte[] record = encode(key, values);
+		synchronized (mutex) {
+			FileLock lock = this.lock();
+			try {
+				this.append(record);
+			} finally {
+				this.unlock(lock);
+			}
+		}
+		entries.put(key, new Entry(Collections.unmodifiableList(new ArrayList<String>(values))));
+		records++;
+
+		if (records > Math.max(COMPACT_MIN_RECORDS, entries.size() * COMPACT_FACTOR)) {
+			try {
+				this.compact();
+			} catch (IOException e) {
+				logger.warn("Failed to compact mreg store file " + file + ", cause: " + e.getMessage(), e);
+			}
+		}
+		return true;
+	}
+
+	private void append(byte[] record) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			try {
+				long size = channel.size();
+				if (size < HEADER_LENGTH) {
+					channel.truncate(0);
+					channel.write(header(), 0);
+					size = HEADER_LENGTH;
+				} else if (size == loadedLength && validLength > 0 && validLength < loadedLength) {
+					// 加载后无其它进程写入，截掉尾部不完整的记录
+					channel.truncate(validLength);
+					size = validLength;
+				}
+				channel.write(ByteBuffer.wrap(record), size);
+				loadedLength = validLength = size + record.length;
+			} finally {
+				channel.close();
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * 压缩：只保留每个服务的最新快照
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		synchronized (mutex) {
+			FileLock lock = this.lock();
+			try {
+				// 重新扫描，包含其它进程追加的记录
+				Map<String, Entry> latest = new LinkedHashMap<String, Entry>();
+				if (file.exists() && file.length() >= HEADER_LENGTH) {
+					byte[] bytes = Files.readAllBytes(file.toPath());
+					ByteBuffer buffer = ByteBuffer.wrap(bytes);
+					if (buffer.getInt(0) == MAGIC) {
+						this.scan(buffer, latest);
+					}
+				}
+
+				Map<String, List<String>> snapshots = new LinkedHashMap<String, List<String>>();
+				for (Map.Entry<String, Entry> entry : latest.entrySet()) {
+					try {
+						List<String> values = decode(entry.getValue().buffer, entry.getValue().position);
+						if (!values.isEmpty()) {
+							snapshots.put(entry.getKey(), values);
+						}
+					} catch (IOException e) {
+						logger.warn("Drop broken record of service " + entry.getKey() + " while compacting mreg store file " + file);
+					}
+				}
+				this.rewrite(snapshots);
+
+				entries.clear();
+				for (Map.Entry<String, List<String>> entry : snapshots.entrySet()) {
+					entries.put(entry.getKey(), new Entry(Collections.unmodifiableList(entry.getValue())));
+				}
+				if (logger.isInfoEnabled()) {
+					logger.info("Compact mreg store file " + file + ", services: " + snapshots.size());
+				}
+			} finally {
+				this.unlock(lock);
+			}
+		}
+	}
+
+	/**
+	 * 写入临时文件后原子替换，调用者需持有文件锁
+	 */
+	private void rewrite(Map<String, List<String>> snapshots) throws IOException {
+		File temp = new File(file.getAbsolutePath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		long size;
+		try {
+			FileChannel channel = raf.getChannel();
+			try {
+				channel.truncate(0);
+				channel.write(header());
+				for (Map.Entry<String, List<String>> entry : snapshots.entrySet()) {
+					channel.write(ByteBuffer.wrap(encode(entry.getKey(), entry.getValue())));
+				}
+				channel.force(true);
+				size = channel.size();
+			} finally {
+				channel.close();
+			}
+		} finally {
+			raf.close();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		records = snapshots.size();
+		loadedLength = validLength = size;
+	}
+
+	private FileLock lock() throws IOException {
+		if (!lockFile.exists()) {
+			lockFile.createNewFile();
+		}
+		RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+		try {
+			return raf.getChannel().lock();
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	private void unlock(FileLock lock) {
+		try {
+			lock.release();
+		} catch (IOException e) {
+			logger.warn(e.getMessage(), e);
+		} finally {
+			try {
+				lock.channel().close();
+			} catch (IOException e) {
+				logger.warn(e.getMessage(), e);
+			}
+		}
+	}
+
+	public synchronized void close() {
+		entries.clear();
+	}
+
+	private static ByteBuffer header() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(MAGIC).putInt(VERSION);
+		header.flip();
+		return header;
+	}
+
+	private static byte[] encode(String key, List<String> values) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		writeString(out, key);
+		out.writeInt(values.size());
+		for (String value : values) {
+			writeString(out, value);
+		}
+		out.flush();
+
+		byte[] bytes = payload.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + bytes.length);
+		record.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes);
+		return record.array();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static List<String> decode(ByteBuffer source, int position) throws IOException {
+		ByteBuffer buffer = source.duplicate();
+		int length = buffer.getInt(position);
+		int checksum = buffer.getInt(position + 4);
+		byte[] bytes = new byte[length];
+		buffer.position(position + RECORD_HEADER_LENGTH);
+		buffer.get(bytes);
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("CRC mismatch at " + position);
+		}
+
+		try {
+			ByteBuffer payload = ByteBuffer.wrap(bytes);
+			payload.position(4 + payload.getInt(0)); // 跳过服务Key
+			int count = payload.getInt();
+			List<String> values = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				byte[] value = new byte[payload.getInt()];
+				payload.get(value);
+				values.add(new String(value, UTF_8));
+			}
+			return values;
+		} catch (RuntimeException e) {
+			throw new IOException("Broken record at " + position, e);
+		}
+	}
+
+	private static class Entry {
+		// 未解码时指向记录所在的缓冲区
+		private ByteBuffer buffer;
+		private int position;
+		private List<String> values;
+
+		private Entry(ByteBuffer buffer, int position) {
+			this.buffer = buffer;
+			this.position = position;
+		}
+
+		private Entry(List<String> values) {
+			this.values = values;
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package io.coon.support.mreg;
+
+import io.neural.NURL;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NURL解析缓存<br>
+ * <br>
+ * 1. 以注册中心中的原始字符串(ZK子节点名或Redis Hash字段)为Key，未变化的注册数据直接复用已解析的NURL。<br>
+ * 2. 按LRU淘汰，容量有界；Value为弱引用，不再被通知结果或快照引用的NURL可被回收。<br>
+ *
+ * @author lry
+ */
+public class NurlCache {
+
+	private final int capacity;
+	private final Map<String, WeakReference<NURL>> cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public NurlCache(final int capacity) {
+		this.capacity = capacity;
+		this.cache = new LinkedHashMap<String, WeakReference<NURL>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, WeakReference<NURL>> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * 解析NURL字符串
+	 *
+	 * @param value 未编码的NURL字符串
+	 * @return
+	 */
+	public NURL valueOf(String value) {
+		NURL nurl = this.get(value);
+		if (nurl == null) {
+			nurl = NURL.valueOf(value);
+			this.put(value, nurl);
+		}
+
+		return nurl;
+	}
+
+	/**
+	 * 解码并解析NURL字符串
+	 *
+	 * @param value 已编码的NURL字符串，如ZK子节点名
+	 * @return 非NURL字符串时返回null
+	 */
+	public NURL decode(String value) {
+		NURL nurl = this.get(value);
+		if (nurl == null) {
+			String decoded = NURL.decode(value);
+			if (!decoded.contains("://")) {
+				return null;
+			}
+
+			nurl = NURL.valueOf(decoded);
+			this.put(value, nurl);
+		}
+
+		return nurl;
+	}
+
+	private NURL get(String value) {
+		if (capacity <= 0) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		WeakReference<NURL> reference;
+		synchronized (cache) {
+			reference = cache.get(value);
+		}
+		NURL nurl = reference == null ? null : reference.get();
+		if (nurl == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return nurl;
+	}
+
+	private void put(String value, NURL nurl) {
+		if (capacity <= 0) {
+			return;
+		}
+
+		synchronized (cache) {
+			cache.put(value, new WeakReference<NURL>(nurl));
+		}
+	}
+
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package io.coon.support.mreg;
+
+import io.coon.support.Consts;
+import io.neural.NURL;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 预编译的订阅匹配条件<br>
+ * <br>
+ * 1. 订阅条件在编译时一次性取参、拆分group和category列表，匹配时只读取注册数据的参数。<br>
+ * 2. 匹配过程不分配对象、不执行正则，语义与{@link MregCommon#isMatch(NURL, NURL)}一致，category按逗号分隔的完整值匹配。<br>
+ *
+ * @author lry
+ */
+public final class NurlMatcher {
+
+	private final NURL nurl;
+	private final String serviceInterface;
+	private final boolean anyInterface;
+
+	private final boolean anyCategory;
+	// true表示categories为排除列表(-routers)，否则为包含列表
+	private final boolean excludeCategory;
+	private final Set<String> categories;
+
+	private final boolean anyEnabled;
+
+	private final boolean anyGroup;
+	private final String group;
+	private final Set<String> groups;
+
+	private final boolean anyVersion;
+	private final String version;
+
+	private final boolean anyClassifier;
+	private final String classifier;
+
+	private NurlMatcher(NURL nurl) {
+		this.nurl = nurl;
+		this.serviceInterface = nurl.getServiceInterface();
+		this.anyInterface = Consts.ANY_VALUE.equals(serviceInterface);
+
+		String category = nurl.getParameter(Consts.CATEGORY_KEY, Consts.DEFAULT_CATEGORY);
+		if (category == null || category.length() == 0) {
+			this.anyCategory = false;
+			this.excludeCategory = false;
+			this.categories = Collections.singleton(Consts.DEFAULT_CATEGORY);
+		} else if (category.contains(Consts.ANY_VALUE)) {
+			this.anyCategory = true;
+			this.excludeCategory = false;
+			this.categories = Collections.emptySet();
+		} else if (category.contains(Consts.REMOVE_VALUE_PREFIX)) {
+			this.anyCategory = false;
+			this.excludeCategory = true;
+			Set<String> excludes = new HashSet<String>();
+			for (String value : split(category)) {
+				if (value.startsWith(Consts.REMOVE_VALUE_PREFIX)) {
+					excludes.add(value.substring(Consts.REMOVE_VALUE_PREFIX.length()));
+				}
+			}
+			this.categories = excludes;
+		} else {
+			this.anyCategory = false;
+			this.excludeCategory = false;
+			this.categories = split(category);
+		}
+
+		this.anyEnabled = Consts.ANY_VALUE.equals(nurl.getParameter(Consts.ENABLED_KEY));
+
+		this.group = nurl.getParameter(Consts.GROUP_KEY);
+		this.anyGroup = Consts.ANY_VALUE.equals(group);
+		this.groups = split(group);
+
+		this.version = nurl.getParameter(Consts.VERSION_KEY);
+		this.anyVersion = Consts.ANY_VALUE.equals(version);
+
+		this.classifier = nurl.getParameter(Consts.CLASSIFIER_KEY, Consts.ANY_VALUE);
+		this.anyClassifier = classifier == null || Consts.ANY_VALUE.equals(classifier);
+	}
+
+	/**
+	 * 编译订阅条件
+	 *
+	 * @param nurl 订阅条件
+	 * @return
+	 */
+	public static NurlMatcher compile(NURL nurl) {
+		if (nurl == null) {
+			throw new IllegalArgumentException("matcher nurl == null");
+		}
+
+		return new NurlMatcher(nurl);
+	}
+
+	public NURL getNurl() {
+		return nurl;
+	}
+
+	public String getServiceInterface() {
+		return serviceInterface;
+	}
+
+	/**
+	 * 是否订阅了所有接口(interface=*)
+	 *
+	 * @return
+	 */
+	public boolean isAnyInterface() {
+		return anyInterface;
+	}
+
+	public boolean isMatchCategory(String category) {
+		if (anyCategory) {
+			return true;
+		} else if (excludeCategory) {
+			return !categories.contains(category);
+		} else {
+			return categories.contains(category);
+		}
+	}
+
+	public boolean isMatch(NURL providerUrl) {
+		if (!(anyInterface || MregCommon.isEquals(serviceInterface, providerUrl.getServiceInterface()))) {
+			return false;
+		}
+		if (!isMatchCategory(providerUrl.getParameter(Consts.CATEGORY_KEY, Consts.DEFAULT_CATEGORY))) {
+			return false;
+		}
+		if (!anyEnabled && !providerUrl.getParameter(Consts.ENABLED_KEY, true)) {
+			return false;
+		}
+
+		if (!anyGroup) {
+			String providerGroup = providerUrl.getParameter(Consts.GROUP_KEY);
+			if (!(MregCommon.isEquals(group, providerGroup)
+					|| (providerGroup != null && providerGroup.length() > 0 && groups.contains(providerGroup)))) {
+				return false;
+			}
+		}
+		if (!anyVersion && !MregCommon.isEquals(version, providerUrl.getParameter(Consts.VERSION_KEY))) {
+			return false;
+		}
+		return anyClassifier || MregCommon.isEquals(classifier, providerUrl.getParameter(Consts.CLASSIFIER_KEY, Consts.ANY_VALUE));
+	}
+
+	private static Set<String> split(String values) {
+		if (values == null || values.length() == 0) {
+			return Collections.emptySet();
+		}
+
+		Set<String> result = new HashSet<String>();
+		for (String value : Consts.COMMA_SPLIT_PATTERN.split(values)) {
+			if (value.length() > 0) {
+				result.add(value);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "NurlMatcher[" + nurl + "]";
+	}
+
+}
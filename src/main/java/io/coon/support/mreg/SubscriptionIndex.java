@@ -0,0 +1,115 @@
+package io.coon.support.mreg;
+
+import io.neural.NURL;
+import io.neural.micro.ConcurrentHashSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 订阅索引<br>
+ * <br>
+ * 1. 按订阅接口分桶，interface=*(及无接口)的订阅单独一个桶，变更时只匹配同接口桶和通配桶中的订阅。<br>
+ * 2. 每个订阅在加入索引时编译为{@link NurlMatcher}，匹配时不再重复取参和拆分。<br>
+ *
+ * @author lry
+ */
+public class SubscriptionIndex {
+
+	private final ConcurrentMap<NURL, NurlMatcher> subscriptions = new ConcurrentHashMap<NURL, NurlMatcher>();
+	private final ConcurrentMap<String, Set<NurlMatcher>> interfaces = new ConcurrentHashMap<String, Set<NurlMatcher>>();
+	private final Set<NurlMatcher> wildcards = new ConcurrentHashSet<NurlMatcher>();
+
+	/**
+	 * 加入索引，重复加入忽略
+	 *
+	 * @param nurl 订阅条件
+	 * @return 已编译的订阅条件
+	 */
+	public NurlMatcher add(NURL nurl) {
+		NurlMatcher matcher = subscriptions.get(nurl);
+		if (matcher != null) {
+			return matcher;
+		}
+
+		subscriptions.putIfAbsent(nurl, NurlMatcher.compile(nurl));
+		matcher = subscriptions.get(nurl);
+		if (matcher.getServiceInterface() == null || matcher.isAnyInterface()) {
+			wildcards.add(matcher);
+		} else {
+			Set<NurlMatcher> bucket = interfaces.get(matcher.getServiceInterface());
+			if (bucket == null) {
+				interfaces.putIfAbsent(matcher.getServiceInterface(), new ConcurrentHashSet<NurlMatcher>());
+				bucket = interfaces.get(matcher.getServiceInterface());
+			}
+			bucket.add(matcher);
+		}
+
+		return matcher;
+	}
+
+	public void remove(NURL nurl) {
+		NurlMatcher matcher = subscriptions.remove(nurl);
+		if (matcher == null) {
+			return;
+		}
+
+		if (matcher.getServiceInterface() == null || matcher.isAnyInterface()) {
+			wildcards.remove(matcher);
+		} else {
+			Set<NurlMatcher> bucket = interfaces.get(matcher.getServiceInterface());
+			if (bucket != null) {
+				bucket.remove(matcher);
+			}
+		}
+	}
+
+	/**
+	 * 获取已编译的订阅条件，未加入索引时临时编译
+	 *
+	 * @param nurl 订阅条件
+	 * @return
+	 */
+	public NurlMatcher get(NURL nurl) {
+		NurlMatcher matcher = subscriptions.get(nurl);
+		return matcher == null ? NurlMatcher.compile(nurl) : matcher;
+	}
+
+	/**
+	 * 查找与注册数据匹配的订阅
+	 *
+	 * @param nurl 注册数据
+	 * @return 匹配的订阅条件
+	 */
+	public List<NURL> lookup(NURL nurl) {
+		Set<NurlMatcher> bucket = nurl.getServiceInterface() == null ? null : interfaces.get(nurl.getServiceInterface());
+		if ((bucket == null || bucket.isEmpty()) && wildcards.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<NURL> result = new ArrayList<NURL>();
+		if (bucket != null) {
+			for (NurlMatcher matcher : bucket) {
+				if (matcher.isMatch(nurl)) {
+					result.add(matcher.getNurl());
+				}
+			}
+		}
+		for (NurlMatcher matcher : wildcards) {
+			if (matcher.isMatch(nurl)) {
+				result.add(matcher.getNurl());
+			}
+		}
+
+		return result;
+	}
+
+	public int size() {
+		return subscriptions.size();
+	}
+
+}
@@ -0,0 +1,297 @@
+package io.coon.zookeeper;
+
+import io.coon.support.Consts;
+import io.coon.support.mlock.exception.MlockException;
+import io.coon.zookeeper.transporter.ZkTransporter;
+import io.coon.zookeeper.transporter.ZkTransporter.ChildListener;
+import io.coon.zookeeper.transporter.ZkTransporter.NodeListener;
+import io.coon.zookeeper.transporter.ZkTransporter.StateListener;
+import io.neural.NURL;
+import io.neural.extension.ExtensionLoader;
+import io.neural.micro.ConcurrentHashSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Zookeeper临时顺序节点排队：分布式锁、读写锁和信号量共用的排队、监听和会话丢失处理。
+ *
+ * @author lry
+ */
+final class ZookeeperLockQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(ZookeeperLockQueue.class);
+
+	private static final String DEFAULT_ROOT = "mlock";
+	// ZK顺序节点的序号为10位数字
+	private static final int SEQUENCE_LENGTH = 10;
+	/**
+	 * 监听整个子节点列表而非单个前驱节点
+	 */
+	static final String WATCH_CHILDREN = "";
+
+	private final NURL nurl;
+	private final String path;
+	private final ZkTransporter transporter;
+	// 会话代数，会话断开时递增，等待中的请求据此判断会话已丢失
+	private final AtomicLong session = new AtomicLong();
+	private final Set<CountDownLatch> waiters = new ConcurrentHashSet<CountDownLatch>();
+	private final Set<String> held = new ConcurrentHashSet<String>();
+	// 等待latch -> 对应的一次性监听器
+	private final ConcurrentMap<CountDownLatch, Object> listeners = new ConcurrentHashMap<CountDownLatch, Object>();
+
+	ZookeeperLockQueue(NURL nurl, String name) {
+		if (nurl.isAnyHost()) {
+			throw new IllegalStateException("mlock address == null");
+		}
+		String group = nurl.getParameter(Consts.GROUP_KEY, DEFAULT_ROOT);
+		if (!group.startsWith(Consts.PATH_SEPARATOR)) {
+			group = Consts.PATH_SEPARATOR + group;
+		}
+		this.nurl = nurl;
+		this.path = group + Consts.PATH_SEPARATOR + name;
+
+		String transporter = nurl.getParameter(Consts.TRANSPORTER_KEY, Consts.TRANSPORTER_DEV_VAL);
+		this.transporter = ExtensionLoader.getLoader(ZkTransporter.class).getExtension(transporter);
+		this.transporter.connect(nurl);
+		this.transporter.addStateListener(new StateListener() {
+			public void stateChanged(int state) {
+				if (state == DISCONNECTED) {
+					session.incrementAndGet();
+					if (!held.isEmpty()) {
+						logger.warn("The zookeeper session of mlock[{}] is disconnected, the held nodes may be lost: {}", path, held);
+					}
+					wakeup();
+				} else if (state == RECONNECTED) {
+					// 重连后重新检查自己的节点是否还在
+					wakeup();
+				}
+			}
+		});
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	boolean isConnected() {
+		return transporter.isConnected();
+	}
+
+	/**
+	 * 排队获取
+	 *
+	 * @param prefix 节点名前缀
+	 * @param condition 获取条件
+	 * @param waitMillis 最长等待时间，小于0表示一直等待，0表示只尝试一次
+	 * @param interruptibly 是否响应中断
+	 * @return 获得时返回节点路径，超时返回null
+	 * @throws InterruptedException
+	 */
+	String acquire(String prefix, Condition condition, long waitMillis, boolean interruptibly) throws InterruptedException {
+		long generation = session.get();
+		String node;
+		try {
+			node = transporter.createSequential(path + Consts.PATH_SEPARATOR + prefix, true);
+		} catch (Exception e) {
+			throw new MlockException("Failed to lock " + path + " from zookeeper " + nurl.getAddress() + ", cause: " + e.getMessage(), e);
+		}
+
+		boolean acquired = false;
+		try {
+			acquired = this.await(node, condition, generation, waitMillis, interruptibly);
+			if (acquired) {
+				held.add(node);
+				return node;
+			}
+			return null;
+		} finally {
+			if (!acquired) {
+				this.deleteQuietly(node);
+			}
+		}
+	}
+
+	void release(String node) {
+		held.remove(node);
+		try {
+			transporter.delete(node);
+		} catch (Exception e) {
+			throw new MlockException("Failed to unlock " + node + " from zookeeper " + nurl.getAddress() + ", cause: " + e.getMessage(), e);
+		}
+	}
+
+	private boolean await(String node, Condition condition, long generation, long waitMillis, boolean interruptibly) throws InterruptedException {
+		String nodeName = toNodeName(node);
+		long deadline = waitMillis < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + waitMillis;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				if (session.get() != generation) {
+					throw new MlockException("The zookeeper session of mlock[" + path + "] is lost while waiting for lock.");
+				}
+
+				List<String> children = this.getSortedChildren();
+				int index = children.indexOf(nodeName);
+				if (index < 0) {
+					throw new MlockException("The lock node " + node + " is lost, maybe the zookeeper session has expired.");
+				}
+				String watchNode = condition.getWatchNode(children, index);
+				if (watchNode == null) {
+					return true;
+				}
+
+				long remain = deadline - System.currentTimeMillis();
+				if (remain <= 0) {
+					return false;
+				}
+
+				final CountDownLatch latch = new CountDownLatch(1);
+				waiters.add(latch);
+				try {
+					if (this.watch(watchNode, children, latch)) {
+						if (deadline == Long.MAX_VALUE) {
+							latch.await();
+						} else {
+							latch.await(remain, TimeUnit.MILLISECONDS);
+						}
+					}
+				} catch (InterruptedException e) {
+					if (interruptibly) {
+						throw e;
+					}
+					interrupted = true;
+				} finally {
+					waiters.remove(latch);
+					this.unwatch(watchNode, latch);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 注册一次性监听
+	 *
+	 * @return false表示注册时条件已变化，需要立即重新检查
+	 */
+	private boolean watch(String watchNode, List<String> children, final CountDownLatch latch) {
+		if (WATCH_CHILDREN.equals(watchNode)) {
+			ChildListener listener = new ChildListener() {
+				@Override
+				public void childChanged(String path, List<String> children) {
+					latch.countDown();
+				}
+			};
+			listeners.put(latch, listener);
+			List<String> current = transporter.addChildListener(path, listener);
+			// 注册监听期间子节点可能已变化，直接重新检查
+			return current != null && current.size() == children.size() && current.containsAll(children);
+		} else {
+			NodeListener listener = new NodeListener() {
+				@Override
+				public void nodeChanged(String path) {
+					latch.countDown();
+				}
+			};
+			listeners.put(latch, listener);
+			return transporter.addNodeListener(path + Consts.PATH_SEPARATOR + watchNode, listener);
+		}
+	}
+
+	private void unwatch(String watchNode, CountDownLatch latch) {
+		Object listener = listeners.remove(latch);
+		if (listener instanceof ChildListener) {
+			transporter.removeChildListener(path, (ChildListener) listener);
+		} else if (listener instanceof NodeListener) {
+			transporter.removeNodeListener(path + Consts.PATH_SEPARATOR + watchNode, (NodeListener) listener);
+		}
+	}
+
+	private List<String> getSortedChildren() {
+		List<String> children = new ArrayList<String>(transporter.getChildren(path));
+		Collections.sort(children, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				return toSequence(o1).compareTo(toSequence(o2));
+			}
+		});
+
+		return children;
+	}
+
+	private static String toSequence(String nodeName) {
+		return nodeName.length() > SEQUENCE_LENGTH ? nodeName.substring(nodeName.length() - SEQUENCE_LENGTH) : nodeName;
+	}
+
+	static String toNodeName(String node) {
+		return node.substring(node.lastIndexOf('/') + 1);
+	}
+
+	private void wakeup() {
+		for (CountDownLatch latch : waiters) {
+			latch.countDown();
+		}
+	}
+
+	private void deleteQuietly(String node) {
+		try {
+			transporter.delete(node);
+		} catch (Throwable t) {
+			logger.warn("Failed to delete lock node " + node + ", cause: " + t.getMessage(), t);
+		}
+	}
+
+	void destroy() {
+		for (String node : held) {
+			this.deleteQuietly(node);
+		}
+		held.clear();
+		wakeup();
+
+		try {
+			transporter.close();
+		} catch (Exception e) {
+			logger.warn("Failed to close zookeeper client " + nurl + ", cause: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 获取条件
+	 */
+	interface Condition {
+
+		/**
+		 * @param children 按序号排序的所有排队节点名
+		 * @param index 自己的位置
+		 * @return null表示已获得，否则返回需要监听的前驱节点名，或{@link ZookeeperLockQueue#WATCH_CHILDREN}
+		 */
+		String getWatchNode(List<String> children, int index);
+
+	}
+
+	/**
+	 * 互斥：排在第一位时获得，否则监听前一个节点
+	 */
+	static final Condition EXCLUSIVE = new Condition() {
+		@Override
+		public String getWatchNode(List<String> children, int index) {
+			return index == 0 ? null : children.get(index - 1);
+		}
+	};
+
+}
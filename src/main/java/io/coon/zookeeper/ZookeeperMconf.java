@@ -1,6 +1,7 @@
 package io.coon.zookeeper;
 
 import io.coon.support.Consts;
+import io.coon.support.CoonFuture;
 import io.coon.support.CoonListener;
 import io.coon.support.mconf.AbstractMconf;
 import io.coon.support.mconf.Mcf;
@@ -44,6 +45,8 @@ public class ZookeeperMconf extends AbstractMconf {
 		String transporter = nurl.getParameter(Consts.TRANSPORTER_KEY, npi.value());
 		this.transporter = ExtensionLoader.getLoader(ZkTransporter.class).getExtension(transporter);
 		this.transporter.connect(nurl);
+		// watch=persistent时以永久递归监听订阅配置
+		this.transporter.watchTree("/" + super.ROOT);
 	}
 	
 	@Override
@@ -162,6 +165,95 @@ public class ZookeeperMconf extends AbstractMconf {
 		}
 	}
 	
+	@Override
+	public CoonFuture<Void> publishAsync(Mcf mcf, Object obj) {
+		String path = mcf.buildRoot(super.nurl).getKey();
+		String json = super.obj2Json(obj);
+		logger.debug("The PATH[{}] async add conf data[{}].", path, json);
+		return this.wrap(transporter.createDataAsync(path, json), "Publish data exception.");
+	}
+
+	@Override
+	public CoonFuture<Void> unpublishAsync(Mcf mcf, Object obj) {
+		String path;
+		if (isNotBlank(mcf.getData())) {
+			path = mcf.buildRoot(super.nurl).getKey();
+		} else {
+			path = mcf.buildRoot(super.nurl).getPrefixKey();
+		}
+		logger.debug("The PATH[{}] async delete conf data.", path);
+		return this.wrap(transporter.deleteAsync(path), "UnPublish data exception.");
+	}
+
+	private CoonFuture<Void> wrap(CoonFuture<Void> zkFuture, final String message) {
+		final CoonFuture<Void> future = new CoonFuture<Void>();
+		zkFuture.addListener(new CoonFuture.Listener<Void>() {
+			@Override
+			public void complete(CoonFuture<Void> result) {
+				if (result.isSuccess()) {
+					future.set(null);
+				} else {
+					future.fail(new IllegalStateException(message, result.getCause()));
+				}
+			}
+		});
+		return future;
+	}
+
+	@Override
+	public <T> CoonFuture<T> lookupAsync(Mcf mcf, final Class<T> cls) {
+		String path = mcf.buildRoot(super.nurl).getPrefixKey();
+		if (super.isBlank(path)) {
+			return CoonFuture.failed(new RuntimeException("The PATH cannot be empty, path==" + path));
+		}
+		
+		final CoonFuture<T> future = new CoonFuture<T>();
+		transporter.getDataAsync(path).addListener(new CoonFuture.Listener<String>() {
+			@Override
+			public void complete(CoonFuture<String> result) {
+				if (!result.isSuccess()) {
+					future.fail(result.getCause());
+					return;
+				}
+				try {
+					future.set(JSON.parseObject(result.getNow(), cls));
+				} catch (Throwable t) {
+					future.fail(t);
+				}
+			}
+		});
+		return future;
+	}
+
+	@Override
+	public <T> CoonFuture<List<T>> lookupsAsync(Mcf mcf, final Class<T> cls) {
+		String path = mcf.buildRoot(super.nurl).getPrefixKey();
+		if (super.isBlank(path)) {
+			return CoonFuture.failed(new RuntimeException("The PATH cannot be empty, path==" + path));
+		}
+		
+		final CoonFuture<List<T>> future = new CoonFuture<List<T>>();
+		transporter.getChildrenDataAsync(path).addListener(new CoonFuture.Listener<List<String>>() {
+			@Override
+			public void complete(CoonFuture<List<String>> result) {
+				if (!result.isSuccess()) {
+					future.fail(result.getCause());
+					return;
+				}
+				try {
+					List<T> list = new ArrayList<T>();
+					for (String json : result.getNow()) {
+						list.add(JSON.parseObject(json, cls));
+					}
+					future.set(list);
+				} catch (Throwable t) {
+					future.fail(t);
+				}
+			}
+		});
+		return future;
+	}
+
 	@Override
 	public Map<String, Map<String, String>> apps() {
 		Map<String, Map<String, String>> apps = new ConcurrentHashMap<String, Map<String, String>>();
@@ -211,6 +303,7 @@ public class ZookeeperMconf extends AbstractMconf {
 
 	@Override
 	public void destroy() {
+		super.shutdownAsync();
 		this.transporter.close();
 	}
 
@@ -0,0 +1,72 @@
+package io.coon.zookeeper;
+
+import io.coon.support.mlock.AbstractMlock;
+import io.neural.NURL;
+import io.neural.extension.Extension;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The base of Zookeeper Mlock.<br>
+ * <br>
+ * 1. 每个加锁请求在/[group]/[lock]下创建一个临时顺序节点，序号最小者持有锁，先到先得。<br>
+ * 2. 等待者只监听自己的前一个节点，释放锁只唤醒一个等待者，没有羊群效应。<br>
+ * 3. 会话断开时中止所有等待者并抛出异常，超时或中断时删除自己的节点。<br>
+ *
+ * @author lry
+ */
+@Extension("zookeeper")
+public class ZookeeperMlock extends AbstractMlock {
+
+	private static final Logger logger = LoggerFactory.getLogger(ZookeeperMlock.class);
+
+	private static final String LOCK_NODE_PREFIX = "lock-";
+
+	private ZookeeperLockQueue queue;
+	// 持有者标识 -> 锁节点路径
+	private final ConcurrentMap<String, String> nodes = new ConcurrentHashMap<String, String>();
+
+	@Override
+	public void connect(NURL nurl) {
+		super.connect(nurl);
+		this.queue = new ZookeeperLockQueue(nurl, name);
+	}
+
+	@Override
+	public boolean available() {
+		return queue.isConnected();
+	}
+
+	@Override
+	protected boolean doLock(String owner, long waitMillis, boolean interruptibly) throws InterruptedException {
+		String node = queue.acquire(LOCK_NODE_PREFIX, ZookeeperLockQueue.EXCLUSIVE, waitMillis, interruptibly);
+		if (node == null) {
+			return false;
+		}
+
+		nodes.put(owner, node);
+		return true;
+	}
+
+	@Override
+	protected void doUnlock(String owner) {
+		String node = nodes.remove(owner);
+		if (node == null) {
+			logger.warn("The mlock[{}] of owner[{}] has no lock node.", queue.getPath(), owner);
+			return;
+		}
+
+		queue.release(node);
+	}
+
+	@Override
+	public void destroy() {
+		nodes.clear();
+		queue.destroy();
+	}
+
+}
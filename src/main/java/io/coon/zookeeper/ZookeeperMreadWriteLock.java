@@ -0,0 +1,116 @@
+package io.coon.zookeeper;
+
+import io.coon.support.mlock.AbstractMreadWriteLock;
+import io.neural.NURL;
+import io.neural.extension.Extension;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The base of Zookeeper MreadWriteLock.<br>
+ * <br>
+ * 1. 读锁和写锁在/[group]/[lock]下分别创建read-和write-临时顺序节点，按序号统一排队。<br>
+ * 2. 读锁只需等待排在前面最近的写节点，写锁等待前一个节点，释放时只唤醒直接后继。<br>
+ * 3. 写锁排队后，后来的读锁排在其后，保证写锁不会饥饿。<br>
+ *
+ * @author lry
+ */
+@Extension("zookeeper")
+public class ZookeeperMreadWriteLock extends AbstractMreadWriteLock {
+
+	private static final Logger logger = LoggerFactory.getLogger(ZookeeperMreadWriteLock.class);
+
+	private static final String READ_NODE_PREFIX = "read-";
+	private static final String WRITE_NODE_PREFIX = "write-";
+
+	private ZookeeperLockQueue queue;
+
+	@Override
+	public void connect(NURL nurl) {
+		super.connect(nurl);
+		this.queue = new ZookeeperLockQueue(nurl, name);
+		super.setLocks(new ReadLock(), new WriteLock());
+	}
+
+	@Override
+	public boolean available() {
+		return queue.isConnected();
+	}
+
+	@Override
+	public void destroy() {
+		queue.destroy();
+	}
+
+	private class ReadLock extends ZookeeperLockView {
+
+		@Override
+		protected boolean doLock(String owner, long waitMillis, boolean interruptibly) throws InterruptedException {
+			// 当前线程持有的写节点，降级时不需要等待
+			final String ownWrite = ((WriteLock) writeLock()).getNodeName(owner);
+			String node = queue.acquire(READ_NODE_PREFIX, new ZookeeperLockQueue.Condition() {
+				@Override
+				public String getWatchNode(List<String> children, int index) {
+					for (int i = index - 1; i >= 0; i--) {
+						String child = children.get(i);
+						if (child.startsWith(WRITE_NODE_PREFIX) && !child.equals(ownWrite)) {
+							return child;
+						}
+					}
+					return null;
+				}
+			}, waitMillis, interruptibly);
+
+			return this.hold(owner, node);
+		}
+
+	}
+
+	private class WriteLock extends ZookeeperLockView {
+
+		@Override
+		protected boolean doLock(String owner, long waitMillis, boolean interruptibly) throws InterruptedException {
+			String node = queue.acquire(WRITE_NODE_PREFIX, ZookeeperLockQueue.EXCLUSIVE, waitMillis, interruptibly);
+			return this.hold(owner, node);
+		}
+
+	}
+
+	private abstract class ZookeeperLockView extends LockView {
+
+		// 持有者标识 -> 锁节点路径
+		private final ConcurrentMap<String, String> nodes = new ConcurrentHashMap<String, String>();
+
+		protected boolean hold(String owner, String node) {
+			if (node == null) {
+				return false;
+			}
+
+			nodes.put(owner, node);
+			return true;
+		}
+
+		String getNodeName(String owner) {
+			String node = nodes.get(owner);
+			return node == null ? null : ZookeeperLockQueue.toNodeName(node);
+		}
+
+		@Override
+		protected void doUnlock(String owner) {
+			String node = nodes.remove(owner);
+			if (node == null) {
+				logger.warn("The mlock[{}] of owner[{}] has no lock node.", queue.getPath(), owner);
+				return;
+			}
+
+			queue.release(node);
+		}
+
+	}
+
+}
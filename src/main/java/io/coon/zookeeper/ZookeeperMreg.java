@@ -1,10 +1,14 @@
 package io.coon.zookeeper;
 
 import io.coon.support.Consts;
+import io.coon.support.CoonFuture;
 import io.coon.support.CoonListener;
+import io.coon.support.NamedThreadFactory;
 import io.coon.support.mreg.FailbackMreg;
-import io.coon.support.mreg.MregCommon;
+import io.coon.support.mreg.LookupCache;
+import io.coon.support.mreg.NurlMatcher;
 import io.coon.support.mreg.exception.MregException;
+import io.coon.zookeeper.transporter.ZkOp;
 import io.coon.zookeeper.transporter.ZkTransporter;
 import io.coon.zookeeper.transporter.ZkTransporter.ChildListener;
 import io.coon.zookeeper.transporter.ZkTransporter.StateListener;
@@ -14,12 +18,24 @@ import io.neural.extension.ExtensionLoader;
 import io.neural.micro.ConcurrentHashSet;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,9 +48,17 @@ public class ZookeeperMreg extends FailbackMreg {
     private final static int DEFAULT_ZOOKEEPER_PORT = 2181;
     private final static String DEFAULT_ROOT = "ms";
     private String root;
-    private final Set<String> anyServices = new ConcurrentHashSet<String>();
     private final ConcurrentMap<NURL, ConcurrentMap<CoonListener<NURL>, ChildListener>> zkListeners = new ConcurrentHashMap<NURL, ConcurrentMap<CoonListener<NURL>, ChildListener>>();
     private ZkTransporter transporter;
+    private int multiBatch;
+    private final AtomicLong skippedNotifies = new AtomicLong();
+    private boolean localLookup;
+    private LookupCache lookupCache;
+    private final AtomicLong notifiedLookups = new AtomicLong();
+    // 通配订阅展开各服务订阅的执行器，以及按序处理根节点子节点变更的执行器
+    private ThreadPoolExecutor wildcardExecutor;
+    private ExecutorService wildcardEventExecutor;
+    private volatile long wildcardFullView = -1;
     
     @Override
     public void connect(NURL nurl) {
@@ -48,6 +72,15 @@ public class ZookeeperMreg extends FailbackMreg {
         }
         
         this.root = group;
+        this.multiBatch = Math.max(1, nurl.getParameter(Consts.MULTI_BATCH_KEY, Consts.DEFAULT_MULTI_BATCH));
+        int wildcardThreads = nurl.getParameter(Consts.WILDCARD_THREADS_KEY, Consts.DEFAULT_WILDCARD_THREADS);
+        this.wildcardExecutor = new ThreadPoolExecutor(wildcardThreads, wildcardThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("MregWildcard", true));
+        this.wildcardExecutor.allowCoreThreadTimeOut(true);
+        this.wildcardEventExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("MregWildcardEvent", true));
+        this.localLookup = Consts.LOOKUP_LOCAL.equals(nurl.getParameter(Consts.LOOKUP_KEY, Consts.LOOKUP_REMOTE));
+        this.lookupCache = new LookupCache(localLookup ? nurl.getParameter(Consts.LOOKUP_STALE_KEY, Consts.DEFAULT_LOOKUP_STALE) : 0,
+                nurl.getParameter(Consts.LOOKUP_CACHE_KEY, Consts.DEFAULT_LOOKUP_CACHE));
         
 		String transporter = nurl.getParameter(Consts.TRANSPORTER_KEY, Consts.TRANSPORTER_DEV_VAL);
 		this.transporter = ExtensionLoader.getLoader(ZkTransporter.class).getExtension(transporter);
@@ -73,6 +106,9 @@ public class ZookeeperMreg extends FailbackMreg {
 		} catch (Exception e) {
 			logger.error("The countDownLatch exception", e);
 		}
+        
+        // watch=tree时以本地缓存树服务订阅和查询，watch=persistent时以永久递归监听订阅
+        this.transporter.watchTree(this.toRootPath());
     }
 
     @Override
@@ -83,6 +119,8 @@ public class ZookeeperMreg extends FailbackMreg {
     @Override
     public void destroy() {
         super.destroy();
+        wildcardEventExecutor.shutdown();
+        wildcardExecutor.shutdown();
         try {
         	transporter.close();
         } catch (Exception e) {
@@ -99,6 +137,27 @@ public class ZookeeperMreg extends FailbackMreg {
         }
     }
 
+    @Override
+    protected Map<NURL, Exception> doRegisterAll(List<NURL> nurls) {
+        // 分批以multi事务提交，父节点由传输层缓存只创建一次；事务失败(如部分节点已存在)时该批逐条注册
+        Map<NURL, Exception> failures = new LinkedHashMap<NURL, Exception>();
+        for (int from = 0; from < nurls.size(); from += multiBatch) {
+            List<NURL> chunk = nurls.subList(from, Math.min(nurls.size(), from + multiBatch));
+            List<ZkOp> ops = new ArrayList<ZkOp>(chunk.size());
+            for (NURL nurl : chunk) {
+                ops.add(ZkOp.create(this.toUrlPath(nurl), nurl.getParameter(Consts.DYNAMIC_KEY, true)));
+            }
+            try {
+                transporter.multi(ops);
+            } catch (Throwable e) {
+                logger.debug("Failed to register " + chunk.size() + " urls in one transaction, register one by one, cause: " + e.getMessage());
+                failures.putAll(super.doRegisterAll(new ArrayList<NURL>(chunk)));
+            }
+        }
+        
+        return failures;
+    }
+
     @Override
     protected void doUnregister(NURL nurl) {
         try {
@@ -108,10 +167,36 @@ public class ZookeeperMreg extends FailbackMreg {
         }
     }
 
+    @Override
+    protected CoonFuture<Void> doRegisterAsync(final NURL nurl) {
+        return this.toMregFuture(transporter.createAsync(this.toUrlPath(nurl), nurl.getParameter(Consts.DYNAMIC_KEY, true)), "register", nurl);
+    }
+
+    @Override
+    protected CoonFuture<Void> doUnregisterAsync(NURL nurl) {
+        return this.toMregFuture(transporter.deleteAsync(this.toUrlPath(nurl)), "unregister", nurl);
+    }
+
+    private CoonFuture<Void> toMregFuture(CoonFuture<Void> zkFuture, final String action, final NURL nurl) {
+        final CoonFuture<Void> future = new CoonFuture<Void>();
+        zkFuture.addListener(new CoonFuture.Listener<Void>() {
+            public void complete(CoonFuture<Void> result) {
+                Throwable e = result.getCause();
+                if (e == null) {
+                    future.set(null);
+                } else {
+                    future.fail(new MregException("Failed to " + action + " " + nurl + " to zookeeper " + getNurl() + ", cause: " + e.getMessage(), e));
+                }
+            }
+        });
+        return future;
+    }
+
     @Override
     protected void doSubscribe(final NURL nurl, final CoonListener<NURL> listener) {
         try {
             if (Consts.ANY_VALUE.equals(nurl.getServiceInterface())) {
+                long start = System.currentTimeMillis();
                 String root = this.toRootPath();
                 ConcurrentMap<CoonListener<NURL>, ChildListener> listeners = zkListeners.get(nurl);
                 if (listeners == null) {
@@ -120,30 +205,23 @@ public class ZookeeperMreg extends FailbackMreg {
                 }
                 ChildListener zkListener = listeners.get(listener);
                 if (zkListener == null) {
-                    listeners.putIfAbsent(listener, new ChildListener() {
-                        public void childChanged(String parentPath, List<String> currentChilds) {
-                            for (String child : currentChilds) {
-								child = NURL.decode(child);
-                                if (! anyServices.contains(child)) {
-                                    anyServices.add(child);
-                                    subscribe(nurl.setPath(child).addParameters(Consts.INTERFACE_KEY, child, Consts.CHECK_KEY, String.valueOf(false)), listener);
-                                }
-                            }
-                        }
-                    });
+                    listeners.putIfAbsent(listener, new AnyServiceListener(nurl, listener));
                     zkListener = listeners.get(listener);
                 }
                 transporter.create(root, false);
                 List<String> services = transporter.addChildListener(root, zkListener);
                 if (services != null && services.size() > 0) {
-                    for (String service : services) {
-						service = NURL.decode(service);
-						anyServices.add(service);
-                        this.subscribe(nurl.setPath(service).addParameters(Consts.INTERFACE_KEY, service, Consts.CHECK_KEY, String.valueOf(false)), listener);
+                    int count = ((AnyServiceListener) zkListener).subscribeAll(services);
+                    if (count > 0) {
+                        wildcardFullView = System.currentTimeMillis() - start;
+                        if (logger.isInfoEnabled()) {
+                            logger.info("Subscribed " + count + " services of " + nurl + " in " + wildcardFullView + "ms");
+                        }
                     }
                 }
             } else {
                 List<NURL> nurls = new ArrayList<NURL>();
+                boolean changed = false;
                 for (String path : toCategoriesPath(nurl)) {
                     ConcurrentMap<CoonListener<NURL>, ChildListener> listeners = zkListeners.get(nurl);
                     if (listeners == null) {
@@ -152,20 +230,23 @@ public class ZookeeperMreg extends FailbackMreg {
                     }
                     ChildListener zkListener = listeners.get(listener);
                     if (zkListener == null) {
-                        listeners.putIfAbsent(listener, new ChildListener() {
-                            public void childChanged(String parentPath, List<String> currentChilds) {
-                            	ZookeeperMreg.this.notify(nurl, listener, toUrlsWithEmpty(nurl, parentPath, currentChilds));
-                            }
-                        });
+                        listeners.putIfAbsent(listener, new CategoryChildListener(nurl, listener));
                         zkListener = listeners.get(listener);
                     }
                     transporter.create(path, false);
                     List<String> children = transporter.addChildListener(path, zkListener);
                     if (children != null) {
-                    	nurls.addAll(this.toUrlsWithEmpty(nurl, path, children));
+                        CategoryChildListener categoryListener = (CategoryChildListener) zkListener;
+                        changed |= categoryListener.reset(path, children);
+                        nurls.addAll(categoryListener.toUrls(path));
                     }
                 }
-                this.notify(nurl, listener, nurls);
+                // 重连后重新监听且子节点没有变化时，不再重复通知
+                if (changed || getNotified().get(nurl) == null) {
+                    this.notify(nurl, listener, nurls);
+                } else {
+                    skippedNotifies.incrementAndGet();
+                }
             }
         } catch (Throwable e) {
             throw new MregException("Failed to subscribe " + nurl + " to zookeeper " + getNurl() + ", cause: " + e.getMessage(), e);
@@ -176,9 +257,27 @@ public class ZookeeperMreg extends FailbackMreg {
     protected void doUnsubscribe(NURL nurl, CoonListener<NURL> listener) {
         ConcurrentMap<CoonListener<NURL>, ChildListener> listeners = zkListeners.get(nurl);
         if (listeners != null) {
-            ChildListener zkListener = listeners.get(listener);
+            ChildListener zkListener = listeners.remove(listener);
             if (zkListener != null) {
-            	transporter.removeChildListener(toUrlPath(nurl), zkListener);
+                if (zkListener instanceof AnyServiceListener) {
+                    ((AnyServiceListener) zkListener).clear();
+                    transporter.removeChildListener(toRootPath(), zkListener);
+                } else {
+                    // 订阅时监听的是每个分类路径，逐个移除；已触发的回调由clear后的监听器忽略
+                    for (String path : toCategoriesPath(nurl)) {
+                        transporter.removeChildListener(path, zkListener);
+                    }
+                    if (zkListener instanceof CategoryChildListener) {
+                        ((CategoryChildListener) zkListener).clear();
+                    }
+                }
+            }
+            if (listeners.isEmpty()) {
+                zkListeners.remove(nurl, listeners);
+                // 并发订阅时重新加入
+                if (! listeners.isEmpty()) {
+                    zkListeners.putIfAbsent(nurl, listeners);
+                }
             }
         }
     }
@@ -188,6 +287,10 @@ public class ZookeeperMreg extends FailbackMreg {
         if (nurl == null) {
             throw new IllegalArgumentException("lookup nurl == null");
         }
+        List<NURL> local = this.lookupLocal(nurl);
+        if (local != null) {
+            return local;
+        }
         
         try {
             List<String> providers = new ArrayList<String>();
@@ -198,11 +301,110 @@ public class ZookeeperMreg extends FailbackMreg {
                 }
             }
             
-            return this.toUrlsWithoutEmpty(nurl, providers);
+            List<NURL> nurls = this.toUrlsWithoutEmpty(nurl, providers);
+            lookupCache.put(nurl, nurls);
+            return nurls;
         } catch (Throwable e) {
             throw new MregException("Failed to lookup " + nurl + " from zookeeper " + getNurl() + ", cause: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * local查询方式下，已订阅的服务从通知结果返回，未订阅的服务从近端缓存返回
+     * 
+     * @return 无本地数据时返回null
+     */
+    private List<NURL> lookupLocal(NURL nurl) {
+        if (! localLookup) {
+            return null;
+        }
+        
+        // 通知结果由监听实时维护，退订后监听已移除，通知结果不再更新
+        Set<CoonListener<NURL>> listeners = getSubscribed().get(nurl);
+        Map<String, List<NURL>> categoryNotified = listeners == null || listeners.isEmpty() ? null : getNotified().get(nurl);
+        if (categoryNotified != null && ! categoryNotified.isEmpty()) {
+            notifiedLookups.incrementAndGet();
+            List<NURL> result = new ArrayList<NURL>();
+            for (List<NURL> nurls : categoryNotified.values()) {
+                for (NURL u : nurls) {
+                    if (! Consts.EMPTY_PROTOCOL.equals(u.getProtocol())) {
+                        result.add(u);
+                    }
+                }
+            }
+            return result;
+        }
+        
+        List<NURL> cached = lookupCache.get(nurl);
+        return cached == null ? null : new ArrayList<NURL>(cached);
+    }
+
+    /**
+     * 从通知结果返回的查询次数
+     * 
+     * @return
+     */
+    public long getNotifiedLookupCount() {
+        return notifiedLookups.get();
+    }
+
+    public LookupCache getLookupCache() {
+        return lookupCache;
+    }
+    
+    @Override
+    public CoonFuture<List<NURL>> lookupAsync(final NURL nurl) {
+        if (nurl == null) {
+            throw new IllegalArgumentException("lookup nurl == null");
+        }
+        List<NURL> local = this.lookupLocal(nurl);
+        if (local != null) {
+            return CoonFuture.succeeded(local);
+        }
+        
+        // 并发读取所有分类节点，全部完成后按分类顺序汇总
+        final CoonFuture<List<NURL>> future = new CoonFuture<List<NURL>>();
+        String[] paths = this.toCategoriesPath(nurl);
+        final List<List<String>> childrens = new ArrayList<List<String>>(paths.length);
+        final AtomicInteger remaining = new AtomicInteger(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            childrens.add(null);
+        }
+        for (int i = 0; i < paths.length; i++) {
+            final int index = i;
+            transporter.getChildrenAsync(paths[i]).addListener(new CoonFuture.Listener<List<String>>() {
+                public void complete(CoonFuture<List<String>> result) {
+                    Throwable e = result.getCause();
+                    if (e != null) {
+                        future.fail(new MregException("Failed to lookup " + nurl + " from zookeeper " + getNurl() + ", cause: " + e.getMessage(), e));
+                        return;
+                    }
+                    synchronized (childrens) {
+                        childrens.set(index, result.getNow());
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        List<String> providers = new ArrayList<String>();
+                        synchronized (childrens) {
+                            for (List<String> children : childrens) {
+                                if (children != null) {
+                                    providers.addAll(children);
+                                }
+                            }
+                        }
+                        try {
+                            List<NURL> nurls = toUrlsWithoutEmpty(nurl, providers);
+                            lookupCache.put(nurl, nurls);
+                            future.set(nurls);
+                        } catch (Throwable t) {
+                            future.fail(t);
+                        }
+                    }
+                }
+            });
+        }
+        
+        return future;
+    }
     
     private String toRootDir() {
         if (root.equals(Consts.PATH_SEPARATOR)) {
@@ -250,13 +452,11 @@ public class ZookeeperMreg extends FailbackMreg {
     private List<NURL> toUrlsWithoutEmpty(NURL consumer, List<String> providers) {
     	List<NURL> nurls = new ArrayList<NURL>();
         if (providers != null && providers.size() > 0) {
+            NurlMatcher matcher = getMatcher(consumer);
             for (String provider : providers) {
-                provider = NURL.decode(provider);
-                if (provider.contains("://")) {
-                	NURL nurl = NURL.valueOf(provider);
-                    if (MregCommon.isMatch(consumer, nurl)) {
-                        nurls.add(nurl);
-                    }
+                NURL nurl = getNurlCache().decode(provider);
+                if (nurl != null && matcher.isMatch(nurl)) {
+                    nurls.add(nurl);
                 }
             }
         }
@@ -264,8 +464,7 @@ public class ZookeeperMreg extends FailbackMreg {
         return nurls;
     }
 
-    private List<NURL> toUrlsWithEmpty(NURL consumer, String path, List<String> providers) {
-        List<NURL> nurls = this.toUrlsWithoutEmpty(consumer, providers);
+    private List<NURL> toUrlsWithEmpty(NURL consumer, String path, List<NURL> nurls) {
         if (nurls.isEmpty()) {
         	int i = path.lastIndexOf('/');
         	String category = i < 0 ? path : path.substring(i + 1);
@@ -276,6 +475,201 @@ public class ZookeeperMreg extends FailbackMreg {
         return nurls;
     }
 
+    /**
+     * 被跳过的无变化通知次数
+     * 
+     * @return
+     */
+    public long getSkippedNotifyCount() {
+        return skippedNotifies.get();
+    }
+
+    /**
+     * 最近一次通配订阅从开始到所有服务完成第一次通知的耗时
+     * 
+     * @return 毫秒，未发生过时返回-1
+     */
+    public long getWildcardFullViewMillis() {
+        return wildcardFullView;
+    }
+
+    /**
+     * 通配订阅的根节点监听器<br>
+     * 只订阅本订阅尚未订阅过的服务，先并发创建分类节点，再有界并发订阅各服务。
+     */
+    private class AnyServiceListener implements ChildListener {
+
+        private final NURL nurl;
+        private final CoonListener<NURL> listener;
+        // 本订阅已展开订阅的服务
+        private final Set<String> services = new ConcurrentHashSet<String>();
+
+        private AnyServiceListener(NURL nurl, CoonListener<NURL> listener) {
+            this.nurl = nurl;
+            this.listener = listener;
+        }
+
+        public void childChanged(String parentPath, final List<String> currentChilds) {
+            if (currentChilds == null || currentChilds.isEmpty()) {
+                return;
+            }
+            // 不阻塞ZK事件线程，异步创建的回调也在该线程中执行
+            wildcardEventExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        subscribeAll(currentChilds);
+                    } catch (Throwable t) {
+                        logger.error("Failed to subscribe services of " + nurl + ", cause: " + t.getMessage(), t);
+                    }
+                }
+            });
+        }
+
+        /**
+         * 订阅尚未订阅过的服务
+         * 
+         * @return 新订阅的服务数
+         */
+        private int subscribeAll(List<String> children) {
+            List<NURL> nurls = new ArrayList<NURL>();
+            for (String child : children) {
+                String service = NURL.decode(child);
+                if (services.add(service)) {
+                    nurls.add(nurl.setPath(service).addParameters(Consts.INTERFACE_KEY, service, Consts.CHECK_KEY, String.valueOf(false)));
+                }
+            }
+            if (nurls.isEmpty()) {
+                return 0;
+            }
+            
+            // 分类节点并发创建，各订阅中的创建命中已知路径缓存，失败时由订阅自行创建
+            List<CoonFuture<Void>> creates = new ArrayList<CoonFuture<Void>>();
+            for (NURL u : nurls) {
+                for (String path : toCategoriesPath(u)) {
+                    creates.add(transporter.createAsync(path, false));
+                }
+            }
+            long deadline = System.currentTimeMillis() + getNurl().getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_TIMEOUT);
+            for (CoonFuture<Void> create : creates) {
+                try {
+                    create.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) { // 忽略，订阅时重试
+                }
+            }
+            
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nurls.size());
+            for (final NURL u : nurls) {
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        subscribe(u, listener); // check=false，失败记入重试
+                        return null;
+                    }
+                });
+            }
+            try {
+                for (Future<Void> future : wildcardExecutor.invokeAll(tasks)) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        logger.error("Failed to subscribe service of " + nurl + ", cause: " + e.getCause().getMessage(), e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return nurls.size();
+        }
+
+        private void clear() {
+            services.clear();
+        }
+    }
+
+    /**
+     * 分类子节点监听器<br>
+     * 按路径保存上一次的子节点，只解析新增的子节点，子节点集合没有变化时不进入通知流程。
+     */
+    private class CategoryChildListener implements ChildListener {
+
+        private final NURL consumer;
+        private final CoonListener<NURL> listener;
+        private final NurlMatcher matcher;
+        // 分类路径 -> (子节点 -> 匹配的NURL，非NURL或不匹配时为null)
+        private final Map<String, Map<String, NURL>> previous = new HashMap<String, Map<String, NURL>>();
+        // 已退订，之后到达的回调不再通知
+        private boolean cleared;
+
+        private CategoryChildListener(NURL consumer, CoonListener<NURL> listener) {
+            this.consumer = consumer;
+            this.listener = listener;
+            this.matcher = getMatcher(consumer);
+        }
+
+        public void childChanged(String parentPath, List<String> currentChilds) {
+            List<NURL> nurls;
+            synchronized (this) {
+                if (cleared) {
+                    return;
+                }
+                if (! this.reset(parentPath, currentChilds == null ? new ArrayList<String>() : currentChilds)) {
+                    skippedNotifies.incrementAndGet();
+                    return;
+                }
+                nurls = this.toUrls(parentPath);
+            }
+            ZookeeperMreg.this.notify(consumer, listener, nurls);
+        }
+
+        /**
+         * 更新路径的子节点
+         * 
+         * @return 子节点集合是否有变化
+         */
+        private synchronized boolean reset(String path, List<String> children) {
+            Map<String, NURL> last = previous.get(path);
+            if (last != null && last.size() == children.size() && last.keySet().containsAll(children)) {
+                return false;
+            }
+            
+            Map<String, NURL> current = new LinkedHashMap<String, NURL>(children.size() * 4 / 3 + 1);
+            for (String child : children) {
+                NURL nurl;
+                if (last != null && last.containsKey(child)) {
+                    nurl = last.get(child);
+                } else {
+                    nurl = getNurlCache().decode(child);
+                    if (nurl != null && ! matcher.isMatch(nurl)) {
+                        nurl = null;
+                    }
+                }
+                current.put(child, nurl);
+            }
+            previous.put(path, current);
+            return true;
+        }
+
+        private synchronized List<NURL> toUrls(String path) {
+            List<NURL> nurls = new ArrayList<NURL>();
+            Map<String, NURL> current = previous.get(path);
+            if (current != null) {
+                for (NURL nurl : current.values()) {
+                    if (nurl != null) {
+                        nurls.add(nurl);
+                    }
+                }
+            }
+            return toUrlsWithEmpty(consumer, path, nurls);
+        }
+
+        private synchronized void clear() {
+            cleared = true;
+            previous.clear();
+        }
+    }
+
     public static String appendDefaultPort(String address) {
         if (address != null && address.length() > 0) {
             int i = address.indexOf(':');
@@ -0,0 +1,80 @@
+package io.coon.zookeeper;
+
+import io.coon.support.mlock.AbstractMsemaphore;
+import io.neural.NURL;
+import io.neural.extension.Extension;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The base of Zookeeper Msemaphore.<br>
+ * <br>
+ * 1. 每个许可请求在/[group]/[lock]下创建一个lease-临时顺序节点，序号排在前permits位的持有许可。<br>
+ * 2. 任意持有者释放都可能让排队者获得许可，因此等待者监听子节点列表变化；只有排队者被唤醒，持有者不受影响。<br>
+ * 3. 持有者会话失效后节点自动删除，许可自动归还。<br>
+ *
+ * @author lry
+ */
+@Extension("zookeeper")
+public class ZookeeperMsemaphore extends AbstractMsemaphore {
+
+	private static final Logger logger = LoggerFactory.getLogger(ZookeeperMsemaphore.class);
+
+	private static final String LEASE_NODE_PREFIX = "lease-";
+
+	private ZookeeperLockQueue queue;
+	private ZookeeperLockQueue.Condition condition;
+	// 许可标识 -> 许可节点路径
+	private final ConcurrentMap<String, String> nodes = new ConcurrentHashMap<String, String>();
+
+	@Override
+	public void connect(NURL nurl) {
+		super.connect(nurl);
+		this.queue = new ZookeeperLockQueue(nurl, name);
+		this.condition = new ZookeeperLockQueue.Condition() {
+			@Override
+			public String getWatchNode(List<String> children, int index) {
+				return index < permits ? null : ZookeeperLockQueue.WATCH_CHILDREN;
+			}
+		};
+	}
+
+	@Override
+	public boolean available() {
+		return queue.isConnected();
+	}
+
+	@Override
+	protected boolean doAcquire(String token, long waitMillis, boolean interruptibly) throws InterruptedException {
+		String node = queue.acquire(LEASE_NODE_PREFIX, condition, waitMillis, interruptibly);
+		if (node == null) {
+			return false;
+		}
+
+		nodes.put(token, node);
+		return true;
+	}
+
+	@Override
+	protected void doRelease(String token) {
+		String node = nodes.remove(token);
+		if (node == null) {
+			logger.warn("The msemaphore[{}] of token[{}] has no lease node.", queue.getPath(), token);
+			return;
+		}
+
+		queue.release(node);
+	}
+
+	@Override
+	public void destroy() {
+		nodes.clear();
+		queue.destroy();
+	}
+
+}
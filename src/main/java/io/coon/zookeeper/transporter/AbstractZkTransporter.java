@@ -1,15 +1,25 @@
 package io.coon.zookeeper.transporter;
 
+import io.coon.support.Consts;
+import io.coon.support.CoonFuture;
+import io.coon.support.NamedThreadFactory;
 import io.neural.NURL;
+import io.neural.micro.ConcurrentHashSet;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.zookeeper.ZooKeeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,11 +32,20 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 	protected final CountDownLatch countDownLatch = new CountDownLatch(1);
 	private final Set<StateListener> stateListeners = new CopyOnWriteArraySet<StateListener>();
 	private final ConcurrentMap<String, ConcurrentMap<ChildListener, TargetChildListener>> childListeners = new ConcurrentHashMap<String, ConcurrentMap<ChildListener, TargetChildListener>>();
-
+	// 本会话已创建或确认存在的持久节点，避免重复创建的往返；删除事件和会话断开时失效
+	private final Set<String> knownPaths = new ConcurrentHashSet<String>();
+	// 无原生异步接口时执行异步操作的执行器
+	private ThreadPoolExecutor asyncExecutor;
+	// watch=persistent且服务端支持时的永久递归监听
+	private volatile PersistentRecursiveWatch persistentWatch;
 
 	@Override
 	public void connect(NURL nurl) {
 		this.nurl = nurl;
+		int asyncThreads = nurl.getParameter(Consts.ASYNC_THREADS_KEY, Consts.DEFAULT_ASYNC_THREADS);
+		this.asyncExecutor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("ZkTransporterAsync", true));
+		this.asyncExecutor.allowCoreThreadTimeOut(true);
 	}
 
 	@Override
@@ -36,10 +55,27 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 
 	@Override
 	public void create(String path, boolean ephemeral) {
-		int i = path.lastIndexOf('/');
-		if (i > 0) {
-			this.create(path.substring(0, i), false);
+		if (!ephemeral && knownPaths.contains(path)) {
+			return;
+		}
+		
+		this.createParents(path);
+		try {
+			this.doCreate(path, ephemeral);
+		} catch (RuntimeException e) {
+			// 缓存的父节点可能已被删除，重建父节点后重试一次
+			if (!this.forgetParents(path)) {
+				throw e;
+			}
+			this.createParents(path);
+			this.doCreate(path, ephemeral);
 		}
+		if (!ephemeral) {
+			knownPaths.add(path);
+		}
+	}
+	
+	private void doCreate(String path, boolean ephemeral) {
 		if (ephemeral) {
 			this.createEphemeral(path);
 		} else {
@@ -47,13 +83,134 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 		}
 	}
 	
+	@Override
+	public String createSequential(String path, boolean ephemeral) {
+		this.createParents(path);
+		try {
+			return this.doCreateSequential(path, ephemeral);
+		} catch (RuntimeException e) {
+			if (!this.forgetParents(path)) {
+				throw e;
+			}
+			this.createParents(path);
+			return this.doCreateSequential(path, ephemeral);
+		}
+	}
+	
+	@Override
+	public void multi(List<ZkOp> ops) {
+		if (ops == null || ops.isEmpty()) {
+			return;
+		}
+		
+		// 父节点不在事务内，已缓存的父节点不再往返
+		for (ZkOp op : ops) {
+			if (op.getType() == ZkOp.Type.CREATE) {
+				this.createParents(op.getPath());
+			}
+		}
+		for (ZkOp op : ops) {
+			if (op.getType() == ZkOp.Type.DELETE) {
+				this.forgetPath(op.getPath());
+			}
+		}
+		try {
+			this.doMulti(ops);
+		} catch (RuntimeException e) {
+			for (ZkOp op : ops) {
+				if (op.getType() != ZkOp.Type.DELETE) {
+					this.forgetParents(op.getPath());
+				}
+			}
+			throw e;
+		}
+		for (ZkOp op : ops) {
+			if (op.getType() == ZkOp.Type.CREATE && !op.isEphemeral()) {
+				knownPaths.add(op.getPath());
+			}
+		}
+	}
+	
+	/**
+	 * 逐级创建不存在的持久父节点
+	 * 
+	 * @param path 子节点路径
+	 */
+	protected void createParents(String path) {
+		int i = path.lastIndexOf('/');
+		if (i <= 0) {
+			return;
+		}
+		
+		String parent = path.substring(0, i);
+		if (knownPaths.contains(parent)) {
+			return;
+		}
+		this.createParents(parent);
+		this.createPersistent(parent);
+		knownPaths.add(parent);
+	}
+	
+	/**
+	 * 移除子节点路径的所有已缓存父节点
+	 * 
+	 * @param path 子节点路径
+	 * @return 是否有缓存被移除
+	 */
+	protected boolean forgetParents(String path) {
+		boolean removed = false;
+		for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+			removed |= knownPaths.remove(path.substring(0, i));
+		}
+		return removed;
+	}
+	
+	/**
+	 * 移除节点及其所有子孙节点的缓存，节点已删除或可能已删除时调用
+	 * 
+	 * @param path 节点路径
+	 */
+	protected void forgetPath(String path) {
+		knownPaths.remove(path);
+		String prefix = path + "/";
+		for (String known : knownPaths) {
+			if (known.startsWith(prefix)) {
+				knownPaths.remove(known);
+			}
+		}
+	}
+	
+	protected boolean isKnownPath(String path) {
+		return knownPaths.contains(path);
+	}
+	
+	protected void addKnownPath(String path) {
+		knownPaths.add(path);
+	}
+	
 	@Override
 	public void createData(String path, String json) {
 		try {
 			this.create(path, false);
 			this.doCreateData(path, json);
 		} catch (Exception e) {
-		}		
+			// 缓存的节点可能已被删除，重建后重试一次
+			if (!knownPaths.contains(path) && !this.forgetParents(path)) {
+				return;
+			}
+			this.forgetPath(path);
+			try {
+				this.create(path, false);
+				this.doCreateData(path, json);
+			} catch (Exception ignore) {
+			}
+		}
+	}
+	
+	@Override
+	public void delete(String path) {
+		this.forgetPath(path);
+		this.doDelete(path);
 	}
 	
 	@Override
@@ -80,6 +237,168 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 		return doGetChildrenData(path);
 	}
 
+	@Override
+	public CoonFuture<Void> createAsync(final String path, final boolean ephemeral) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				create(path, ephemeral);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public CoonFuture<Void> deleteAsync(final String path) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				delete(path);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public CoonFuture<List<String>> getChildrenAsync(final String path) {
+		return this.submit(new Callable<List<String>>() {
+			@Override
+			public List<String> call() {
+				return getChildren(path);
+			}
+		});
+	}
+
+	@Override
+	public CoonFuture<Void> createDataAsync(final String path, final String json) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				create(path, false);
+				doCreateData(path, json);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public CoonFuture<String> getDataAsync(final String path) {
+		return this.submit(new Callable<String>() {
+			@Override
+			public String call() {
+				return doGetChildrenData(path);
+			}
+		});
+	}
+
+	@Override
+	public CoonFuture<List<String>> getChildrenDataAsync(final String path) {
+		final CoonFuture<List<String>> future = new CoonFuture<List<String>>();
+		this.getChildrenAsync(path).addListener(new CoonFuture.Listener<List<String>>() {
+			@Override
+			public void complete(CoonFuture<List<String>> children) {
+				if (!children.isSuccess()) {
+					future.fail(children.getCause());
+					return;
+				}
+				
+				// 并发读取所有子节点数据，按子节点顺序汇总
+				final List<String> names = children.getNow();
+				if (names == null || names.isEmpty()) {
+					future.set(new ArrayList<String>());
+					return;
+				}
+				final String[] datas = new String[names.size()];
+				final AtomicInteger remaining = new AtomicInteger(names.size());
+				for (int i = 0; i < names.size(); i++) {
+					final int index = i;
+					getDataAsync(path + "/" + names.get(i)).addListener(new CoonFuture.Listener<String>() {
+						@Override
+						public void complete(CoonFuture<String> data) {
+							if (!data.isSuccess()) {
+								future.fail(data.getCause());
+								return;
+							}
+							datas[index] = data.getNow();
+							if (remaining.decrementAndGet() == 0) {
+								List<String> childrenDatas = new ArrayList<String>(datas.length);
+								for (String json : datas) {
+									if (json != null && json.length() > 0) {
+										childrenDatas.add(json);
+									}
+								}
+								future.set(childrenDatas);
+							}
+						}
+					});
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * 在异步执行器中执行同步操作，供无原生异步接口的客户端使用
+	 */
+	protected <V> CoonFuture<V> submit(Callable<V> task) {
+		return CoonFuture.submit(asyncExecutor, task);
+	}
+
+	@Override
+	public synchronized void watchTree(String root) {
+		String watch = nurl.getParameter(Consts.WATCH_KEY, Consts.WATCH_WATCHER);
+		if (Consts.WATCH_PERSISTENT.equals(watch)) {
+			PersistentRecursiveWatch watcher = persistentWatch;
+			if (watcher == null) {
+				watcher = new PersistentRecursiveWatch(this);
+			}
+			this.create(root, false);
+			if (watcher.watch(root)) {
+				this.persistentWatch = watcher;
+			} else {
+				logger.warn("Using one-shot watchers on " + root);
+				if (persistentWatch == null) {
+					watcher.close();
+				}
+			}
+		} else if (Consts.WATCH_TREE.equals(watch) && !this.doWatchTree(root)) {
+			logger.warn("The " + getClass().getSimpleName() + " does not support watch=tree, using one-shot watchers on " + root);
+		}
+	}
+
+	/**
+	 * 本地缓存以root为根的整棵树
+	 * 
+	 * @param root 根路径
+	 * @return 客户端不支持时返回false
+	 */
+	protected boolean doWatchTree(String root) {
+		return false;
+	}
+
+	/**
+	 * 路径在永久递归监听下时，由其回调数据监听器，不再注册一次性Watcher
+	 * 
+	 * @return 是否已由永久递归监听接管
+	 */
+	protected boolean addPersistentDataListener(String path, DataListener listener) {
+		PersistentRecursiveWatch watcher = persistentWatch;
+		if (watcher == null || !watcher.covers(path)) {
+			return false;
+		}
+		watcher.addDataListener(path, listener);
+		return true;
+	}
+
+	protected boolean removePersistentDataListener(String path, DataListener listener) {
+		PersistentRecursiveWatch watcher = persistentWatch;
+		if (watcher == null || !watcher.covers(path)) {
+			return false;
+		}
+		watcher.removeDataListener(path, listener);
+		return true;
+	}
+
 	@Override
 	public void addStateListener(StateListener listener) {
 		stateListeners.add(listener);
@@ -96,6 +415,11 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 
 	@Override
 	public List<String> addChildListener(String path, final ChildListener listener) {
+		PersistentRecursiveWatch watcher = persistentWatch;
+		if (watcher != null && watcher.covers(path)) {
+			return watcher.addChildListener(path, listener);
+		}
+		
 		ConcurrentMap<ChildListener, TargetChildListener> listeners = childListeners.get(path);
 		if (listeners == null) {
 			childListeners.putIfAbsent(path, new ConcurrentHashMap<ChildListener, TargetChildListener>());
@@ -111,6 +435,12 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 
 	@Override
 	public void removeChildListener(String path, ChildListener listener) {
+		PersistentRecursiveWatch watcher = persistentWatch;
+		if (watcher != null && watcher.covers(path)) {
+			watcher.removeChildListener(path, listener);
+			return;
+		}
+		
 		ConcurrentMap<ChildListener, TargetChildListener> listeners = childListeners.get(path);
 		if (listeners != null) {
 			TargetChildListener targetListener = listeners.remove(listener);
@@ -122,6 +452,15 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 	
 
 	protected void stateChanged(int state) {
+		if (state != StateListener.CONNECTED) {
+			// 断开期间节点可能被删除，重新确认
+			knownPaths.clear();
+		}
+		PersistentRecursiveWatch watcher = persistentWatch;
+		if (watcher != null && state == StateListener.RECONNECTED) {
+			// 永久监听不跨会话，重新注册并补齐断开期间的变更
+			watcher.rewatch();
+		}
 		for (StateListener sessionListener : getSessionListeners()) {
 			sessionListener.stateChanged(state);
 		}
@@ -133,6 +472,12 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 			return;
 		}
 		closed = true;
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdown();
+		}
+		if (persistentWatch != null) {
+			persistentWatch.close();
+		}
 		try {
 			doClose();
 		} catch (Throwable t) {
@@ -141,9 +486,13 @@ public abstract class AbstractZkTransporter<TargetChildListener> implements ZkTr
 	}
 
 	protected abstract void doClose();
+	protected abstract ZooKeeper getZooKeeper() throws Exception;
 	protected abstract void createPersistent(String path);
 	protected abstract void createEphemeral(String path);
+	protected abstract String doCreateSequential(String path, boolean ephemeral);
 	protected abstract void doCreateData(String path, String json);
+	protected abstract void doMulti(List<ZkOp> ops);
+	protected abstract void doDelete(String path);
 	// ===== Listener Path Node
 	protected abstract String doGetChildrenData(String path);
 	protected abstract TargetChildListener createTargetChildListener(String path, ChildListener listener);
@@ -1,6 +1,7 @@
 package io.coon.zookeeper.transporter;
 
 import io.coon.support.Consts;
+import io.coon.support.CoonFuture;
 import io.neural.NURL;
 import io.neural.extension.Extension;
 import io.neural.micro.ConcurrentHashSet;
@@ -10,24 +11,38 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.CuratorFrameworkFactory.Builder;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionBridge;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
 import org.apache.curator.framework.api.CuratorWatcher;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
 import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.retry.RetryNTimes;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.apache.zookeeper.KeeperException.NodeExistsException;
 import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +52,12 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 	private static final Logger logger = LoggerFactory.getLogger(CuratorZkTransporter.class);
 	
 	private CuratorFramework client;
+	// watch=tree时本地缓存的树，初始化完成后其下的子节点监听和查询由本地缓存服务
+	private volatile TreeCache treeCache;
+	private volatile String treeRoot;
+	private volatile boolean treeInitialized;
+	// 由本地缓存树服务的子节点监听：父路径 -> 监听器
+	private final ConcurrentMap<String, Set<CuratorWatcherImpl>> treeWatchers = new ConcurrentHashMap<String, Set<CuratorWatcherImpl>>();
 
 	@Override
 	public void connect(NURL nurl) {
@@ -96,6 +117,15 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 		}
 	}
 	
+	@Override
+	public String doCreateSequential(String path, boolean ephemeral) {
+		try {
+			return client.create().withMode(ephemeral ? CreateMode.EPHEMERAL_SEQUENTIAL : CreateMode.PERSISTENT_SEQUENTIAL).forPath(path);
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+	
 	@Override
 	public void doCreateData(String path, String json) {
 		try {
@@ -107,7 +137,33 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 	}
 
 	@Override
-	public void delete(String path) {
+	public void doMulti(List<ZkOp> ops) {
+		try {
+			CuratorTransaction transaction = client.inTransaction();
+			CuratorTransactionFinal last = null;
+			for (ZkOp op : ops) {
+				CuratorTransactionBridge bridge;
+				switch (op.getType()) {
+				case CREATE:
+					bridge = transaction.create().withMode(op.isEphemeral() ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT).forPath(op.getPath());
+					break;
+				case DELETE:
+					bridge = transaction.delete().forPath(op.getPath());
+					break;
+				default:
+					bridge = transaction.setData().forPath(op.getPath(), op.getData().getBytes("UTF-8"));
+					break;
+				}
+				transaction = last = bridge.and();
+			}
+			last.commit();
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void doDelete(String path) {
 		try {
 			client.delete().forPath(path);
 		} catch (NoNodeException e) {
@@ -118,6 +174,13 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 
 	@Override
 	public List<String> getChildren(String path) {
+		if (this.isTreePath(path)) {
+			// 刚创建的节点本地缓存树可能还未收到，读取ZK
+			List<String> children = this.getTreeChildren(path);
+			if (children != null) {
+				return children;
+			}
+		}
 		try {
 			return client.getChildren().forPath(path);
 		} catch (NoNodeException e) {
@@ -127,6 +190,169 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 		}
 	}
 
+	@Override
+	public CoonFuture<Void> createAsync(final String path, final boolean ephemeral) {
+		if (!ephemeral && isKnownPath(path)) {
+			return CoonFuture.succeeded(null);
+		}
+		
+		final CoonFuture<Void> future = new CoonFuture<Void>();
+		try {
+			client.create().creatingParentsIfNeeded().withMode(ephemeral ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT)
+				.inBackground(new BackgroundCallback() {
+					@Override
+					public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+						int rc = event.getResultCode();
+						if (rc == Code.OK.intValue() || rc == Code.NODEEXISTS.intValue()) {
+							if (!ephemeral) {
+								addKnownPath(path);
+							}
+							future.set(null);
+						} else {
+							future.fail(toException(rc, event.getPath()));
+						}
+					}
+				}).forPath(path);
+		} catch (Exception e) {
+			future.fail(new IllegalStateException(e.getMessage(), e));
+		}
+		return future;
+	}
+
+	@Override
+	public CoonFuture<Void> deleteAsync(String path) {
+		forgetPath(path);
+		final CoonFuture<Void> future = new CoonFuture<Void>();
+		try {
+			client.delete().inBackground(new BackgroundCallback() {
+				@Override
+				public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+					int rc = event.getResultCode();
+					if (rc == Code.OK.intValue() || rc == Code.NONODE.intValue()) {
+						future.set(null);
+					} else {
+						future.fail(toException(rc, event.getPath()));
+					}
+				}
+			}).forPath(path);
+		} catch (Exception e) {
+			future.fail(new IllegalStateException(e.getMessage(), e));
+		}
+		return future;
+	}
+
+	@Override
+	public CoonFuture<List<String>> getChildrenAsync(String path) {
+		if (this.isTreePath(path)) {
+			List<String> children = this.getTreeChildren(path);
+			if (children != null) {
+				return CoonFuture.succeeded(children);
+			}
+		}
+		final CoonFuture<List<String>> future = new CoonFuture<List<String>>();
+		try {
+			client.getChildren().inBackground(new BackgroundCallback() {
+				@Override
+				public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+					int rc = event.getResultCode();
+					if (rc == Code.OK.intValue()) {
+						List<String> children = event.getChildren();
+						future.set(children == null ? new ArrayList<String>() : children);
+					} else if (rc == Code.NONODE.intValue()) {
+						future.set(new ArrayList<String>());
+					} else {
+						future.fail(toException(rc, event.getPath()));
+					}
+				}
+			}).forPath(path);
+		} catch (Exception e) {
+			future.fail(new IllegalStateException(e.getMessage(), e));
+		}
+		return future;
+	}
+
+	@Override
+	public CoonFuture<Void> createDataAsync(final String path, String json) {
+		final CoonFuture<Void> future = new CoonFuture<Void>();
+		try {
+			final byte[] data = json.getBytes("UTF-8");
+			if (isKnownPath(path)) {
+				// 已知节点直接覆盖数据，节点已被删除时再创建
+				this.setDataAsync(path, data, future, true);
+				return future;
+			}
+			this.createDataAsync(path, data, future);
+		} catch (Exception e) {
+			future.fail(new IllegalStateException(e.getMessage(), e));
+		}
+		return future;
+	}
+
+	private void createDataAsync(final String path, final byte[] data, final CoonFuture<Void> future) throws Exception {
+		client.create().creatingParentsIfNeeded().inBackground(new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				int rc = event.getResultCode();
+				if (rc == Code.OK.intValue()) {
+					addKnownPath(path);
+					future.set(null);
+				} else if (rc == Code.NODEEXISTS.intValue()) {
+					// 节点已存在时覆盖数据
+					addKnownPath(path);
+					setDataAsync(path, data, future, false);
+				} else {
+					future.fail(toException(rc, event.getPath()));
+				}
+			}
+		}).forPath(path, data);
+	}
+
+	private void setDataAsync(final String path, final byte[] data, final CoonFuture<Void> future, final boolean createIfNoNode) throws Exception {
+		client.setData().inBackground(new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				int rc = event.getResultCode();
+				if (rc == Code.OK.intValue()) {
+					future.set(null);
+				} else if (rc == Code.NONODE.intValue() && createIfNoNode) {
+					forgetPath(path);
+					createDataAsync(path, data, future);
+				} else {
+					future.fail(toException(rc, event.getPath()));
+				}
+			}
+		}).forPath(path, data);
+	}
+
+	@Override
+	public CoonFuture<String> getDataAsync(String path) {
+		final CoonFuture<String> future = new CoonFuture<String>();
+		try {
+			client.getData().inBackground(new BackgroundCallback() {
+				@Override
+				public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+					int rc = event.getResultCode();
+					if (rc == Code.OK.intValue()) {
+						byte[] data = event.getData();
+						future.set(data == null ? null : new String(data, "UTF-8"));
+					} else if (rc == Code.NONODE.intValue()) {
+						future.set(null);
+					} else {
+						future.fail(toException(rc, event.getPath()));
+					}
+				}
+			}).forPath(path);
+		} catch (Exception e) {
+			future.fail(new IllegalStateException(e.getMessage(), e));
+		}
+		return future;
+	}
+
+	private IllegalStateException toException(int rc, String path) {
+		KeeperException e = KeeperException.create(Code.get(rc), path);
+		return new IllegalStateException(e.getMessage(), e);
+	}
+
 	@Override
 	public boolean isConnected() {
 		return client.getZookeeperClient().isConnected();
@@ -134,8 +360,111 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 
 	@Override
 	public void doClose() {
+		TreeCache cache = treeCache;
+		if (cache != null) {
+			treeCache = null;
+			cache.close();
+		}
 		client.close();
 	}
+
+	@Override
+	protected ZooKeeper getZooKeeper() throws Exception {
+		return client.getZookeeperClient().getZooKeeper();
+	}
+
+	@Override
+	protected boolean doWatchTree(String root) {
+		if (treeCache != null) {
+			return true;
+		}
+		
+		final CountDownLatch initialized = new CountDownLatch(1);
+		TreeCache cache = TreeCache.newBuilder(client, root).setCacheData(false).build();
+		cache.getListenable().addListener(new TreeCacheListener() {
+			@Override
+			public void childEvent(CuratorFramework client, TreeCacheEvent event) throws Exception {
+				switch (event.getType()) {
+				case INITIALIZED:
+					treeInitialized = true;
+					initialized.countDown();
+					break;
+				case NODE_ADDED:
+				case NODE_REMOVED:
+					if (treeInitialized && event.getData() != null) {
+						String path = event.getData().getPath();
+						int i = path.lastIndexOf('/');
+						treeChanged(i > 0 ? path.substring(0, i) : "/");
+						if (event.getType() == TreeCacheEvent.Type.NODE_REMOVED) {
+							forgetPath(path);
+						}
+						// 新增的节点上可能已有监听器，注册时缓存树中还没有该节点
+						treeChanged(path);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		});
+		
+		try {
+			this.create(root, false);
+			this.treeRoot = root;
+			this.treeCache = cache;
+			cache.start();
+			if (!initialized.await(getNurl().getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_REGISTRY_CONNECT_TIMEOUT), TimeUnit.MILLISECONDS)) {
+				logger.warn("The tree cache of " + root + " is not initialized yet, using one-shot watchers until it is");
+			}
+		} catch (Exception e) {
+			logger.warn("Failed to start tree cache of " + root + ", using one-shot watchers, cause: " + e.getMessage(), e);
+			this.treeCache = null;
+			cache.close();
+		}
+		return true;
+	}
+
+	/**
+	 * 路径是否由已初始化的本地缓存树服务
+	 */
+	private boolean isTreePath(String path) {
+		if (!treeInitialized || treeCache == null) {
+			return false;
+		}
+		String root = treeRoot;
+		return "/".equals(root) || path.equals(root) || path.startsWith(root + "/");
+	}
+
+	private List<String> getTreeChildren(String path) {
+		TreeCache cache = treeCache;
+		Map<String, ChildData> children = cache == null ? null : cache.getCurrentChildren(path);
+		return children == null ? null : new ArrayList<String>(children.keySet());
+	}
+
+	/**
+	 * 本地缓存树中的子节点变更，直接以缓存中的子节点回调监听器，无需读取ZK
+	 */
+	private void treeChanged(String path) {
+		Set<CuratorWatcherImpl> watchers = treeWatchers.get(path);
+		if (watchers == null || watchers.isEmpty()) {
+			return;
+		}
+		
+		List<String> children = this.getTreeChildren(path);
+		if (children == null) {
+			children = new ArrayList<String>();
+		}
+		for (CuratorWatcherImpl watcher : watchers) {
+			ChildListener listener = watcher.listener;
+			if (listener != null) {
+				try {
+					listener.childChanged(path, children);
+				} catch (Throwable t) {
+					logger.error("Failed to notify child changed of " + path + ", cause: " + t.getMessage(), t);
+				}
+			}
+		}
+	}
 	
 	@Override
 	public String doGetChildrenData(String path) {
@@ -166,12 +495,61 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 
 		@Override
 		public void process(WatchedEvent event) throws Exception {
+			if (event.getType() == EventType.NodeDeleted) {
+				forgetPath(event.getPath());
+			}
 			if (listener != null) {
 				listener.childChanged(event.getPath(), client.getChildren().usingWatcher(this).forPath(event.getPath()));
 			}
 		}
 	}
 
+	private final Map<NodeListener, NodeWatcherImpl> nodeWatcherMap = new ConcurrentHashMap<NodeListener, NodeWatcherImpl>();
+	
+	private class NodeWatcherImpl implements CuratorWatcher {
+
+		private volatile NodeListener listener;
+
+		public NodeWatcherImpl(NodeListener listener) {
+			this.listener = listener;
+		}
+
+		public void unwatch() {
+			this.listener = null;
+		}
+
+		@Override
+		public void process(WatchedEvent event) throws Exception {
+			NodeListener listener = this.listener;
+			if (listener != null) {
+				this.listener = null;
+				nodeWatcherMap.remove(listener);
+				listener.nodeChanged(event.getPath());
+			}
+		}
+	}
+	
+	@Override
+	public boolean addNodeListener(String path, NodeListener listener) {
+		NodeWatcherImpl watcher = new NodeWatcherImpl(listener);
+		nodeWatcherMap.put(listener, watcher);
+		try {
+			return client.checkExists().usingWatcher(watcher).forPath(path) != null;
+		} catch (Exception e) {
+			nodeWatcherMap.remove(listener);
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+	
+	@Override
+	public void removeNodeListener(String path, NodeListener listener) {
+		// ZK原生Watcher无法移除，置空后触发时忽略
+		NodeWatcherImpl watcher = nodeWatcherMap.remove(listener);
+		if (watcher != null) {
+			watcher.unwatch();
+		}
+	}
+
 	@Override
 	public CuratorWatcher createTargetChildListener(String path, ChildListener listener) {
 		return new CuratorWatcherImpl(listener);
@@ -179,6 +557,27 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 
 	@Override
 	public List<String> addTargetChildListener(String path, CuratorWatcher listener) {
+		if (this.isTreePath(path)) {
+			Set<CuratorWatcherImpl> watchers = treeWatchers.get(path);
+			if (watchers == null) {
+				treeWatchers.putIfAbsent(path, new ConcurrentHashSet<CuratorWatcherImpl>());
+				watchers = treeWatchers.get(path);
+			}
+			watchers.add((CuratorWatcherImpl) listener);
+			List<String> children = this.getTreeChildren(path);
+			if (children != null) {
+				return children;
+			}
+			
+			// 刚创建的节点缓存树还未收到NODE_ADDED，直接读取ZK，之后的变更由缓存树回调
+			try {
+				return client.getChildren().forPath(path);
+			} catch (NoNodeException e) {
+				return null;
+			} catch (Exception e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
 		try {
 			return client.getChildren().usingWatcher(listener).forPath(path);
 		} catch (NoNodeException e) {
@@ -190,6 +589,10 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 
 	@Override
 	public void removeTargetChildListener(String path, CuratorWatcher listener) {
+		Set<CuratorWatcherImpl> watchers = treeWatchers.get(path);
+		if (watchers != null) {
+			watchers.remove(listener);
+		}
 		((CuratorWatcherImpl) listener).unwatch();
 	}
 	
@@ -200,6 +603,10 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 	
 	@Override
 	public void addDataListener(String path, DataListener listener) {
+		if (this.addPersistentDataListener(path, listener)) {
+			return;
+		}
+		
 		try {
 			// 第一步：获取-校验-创建监听器
 			PathChildrenCacheListener pathChildrenCacheListener = dataListenerMap.get(listener);
@@ -232,6 +639,10 @@ public class CuratorZkTransporter extends AbstractZkTransporter<CuratorWatcher>
 	
 	@Override
 	public void removeDataListener(String path, DataListener listener) {
+		if (this.removePersistentDataListener(path, listener)) {
+			return;
+		}
+		
 		try {
 			// 第一步：移除dataListenerMap中的数据
 			PathChildrenCacheListener pathChildrenCacheListener = dataListenerMap.get(listener);
@@ -0,0 +1,268 @@
+package io.coon.zookeeper.transporter;
+
+import io.coon.support.NamedThreadFactory;
+import io.coon.zookeeper.transporter.ZkTransporter.ChildListener;
+import io.coon.zookeeper.transporter.ZkTransporter.DataListener;
+import io.neural.micro.ConcurrentHashSet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ZooKeeper 3.6+ 永久递归监听<br>
+ * <br>
+ * 1. 在根路径上注册一个addWatch(PERSISTENT_RECURSIVE)监听，触发后无需重新注册，没有一次性Watcher重新注册期间的事件空窗。<br>
+ * 2. 子孙节点的创建和删除回调其父路径上的ChildListener，数据变更和子节点增删回调其父路径上的DataListener。<br>
+ * 3. 客户端或服务端低于3.6时注册失败，由调用方回退到一次性Watcher。<br>
+ * 4. 新会话建立后重新注册并全量同步一次，以补齐断开期间的变更。<br>
+ *
+ * @author lry
+ */
+public class PersistentRecursiveWatch implements Watcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistentRecursiveWatch.class);
+
+	private final AbstractZkTransporter<?> transporter;
+	private final Set<String> roots = new ConcurrentHashSet<String>();
+	private final ConcurrentMap<String, Set<ChildListener>> childListeners = new ConcurrentHashMap<String, Set<ChildListener>>();
+	private final ConcurrentMap<String, Set<DataListener>> dataListeners = new ConcurrentHashMap<String, Set<DataListener>>();
+	// 数据监听路径 -> (子节点全路径 -> 数据)
+	private final ConcurrentMap<String, Map<String, String>> childrenDatas = new ConcurrentHashMap<String, Map<String, String>>();
+	// 按序处理事件，不阻塞ZK事件线程
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("ZkPersistentWatch", true));
+
+	public PersistentRecursiveWatch(AbstractZkTransporter<?> transporter) {
+		this.transporter = transporter;
+	}
+
+	/**
+	 * 在根路径上注册永久递归监听
+	 *
+	 * @param root 根路径
+	 * @return 客户端和服务端均支持且注册成功时返回true
+	 */
+	public boolean watch(String root) {
+		try {
+			this.addWatch(root);
+			roots.add(root);
+			return true;
+		} catch (Throwable t) {
+			logger.warn("The persistent recursive watch is not supported on " + root + ", cause: " + t);
+			return false;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void addWatch(String root) throws Exception {
+		// 编译依赖的ZooKeeper客户端低于3.6，以反射调用addWatch
+		Class modeClass = Class.forName("org.apache.zookeeper.AddWatchMode");
+		Object mode = Enum.valueOf(modeClass, "PERSISTENT_RECURSIVE");
+		Method addWatch = ZooKeeper.class.getMethod("addWatch", String.class, Watcher.class, modeClass);
+		try {
+			addWatch.invoke(transporter.getZooKeeper(), root, this, mode);
+		} catch (InvocationTargetException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	public boolean covers(String path) {
+		for (String root : roots) {
+			if ("/".equals(root) || path.equals(root) || path.startsWith(root + "/")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 新会话建立后重新注册并全量同步
+	 */
+	public void rewatch() {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (String root : roots) {
+					try {
+						addWatch(root);
+					} catch (Throwable t) {
+						logger.error("Failed to rewatch " + root + ", cause: " + t.getMessage(), t);
+					}
+				}
+				for (String path : childListeners.keySet()) {
+					childChanged(path);
+				}
+				for (String path : dataListeners.keySet()) {
+					reloadData(path);
+				}
+			}
+		});
+	}
+
+	public List<String> addChildListener(String path, ChildListener listener) {
+		Set<ChildListener> listeners = childListeners.get(path);
+		if (listeners == null) {
+			childListeners.putIfAbsent(path, new ConcurrentHashSet<ChildListener>());
+			listeners = childListeners.get(path);
+		}
+		listeners.add(listener);
+		return transporter.getChildren(path);
+	}
+
+	public void removeChildListener(String path, ChildListener listener) {
+		Set<ChildListener> listeners = childListeners.get(path);
+		if (listeners != null) {
+			listeners.remove(listener);
+		}
+	}
+
+	public void addDataListener(final String path, DataListener listener) {
+		Set<DataListener> listeners = dataListeners.get(path);
+		if (listeners == null) {
+			dataListeners.putIfAbsent(path, new ConcurrentHashSet<DataListener>());
+			listeners = dataListeners.get(path);
+		}
+		if (listeners.add(listener)) {
+			// 与PathChildrenCache一致，添加后异步回调一次初始数据
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					reloadData(path);
+				}
+			});
+		}
+	}
+
+	public void removeDataListener(String path, DataListener listener) {
+		Set<DataListener> listeners = dataListeners.get(path);
+		if (listeners != null) {
+			listeners.remove(listener);
+			if (listeners.isEmpty()) {
+				dataListeners.remove(path);
+				childrenDatas.remove(path);
+			}
+		}
+	}
+
+	@Override
+	public void process(final WatchedEvent event) {
+		final String path = event.getPath();
+		final EventType type = event.getType();
+		if (path == null || (type != EventType.NodeCreated && type != EventType.NodeDeleted && type != EventType.NodeDataChanged)) {
+			// PersistentWatchRemoved只存在于3.6+客户端，按名称比较以兼容编译依赖的3.4客户端
+			if (type != null && "PersistentWatchRemoved".equals(type.name())) {
+				logger.warn("The persistent recursive watch of " + path + " is removed");
+			}
+			return;
+		}
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					int i = path.lastIndexOf('/');
+					String parent = i > 0 ? path.substring(0, i) : "/";
+					if (type == EventType.NodeDeleted) {
+						transporter.forgetPath(path);
+						childChanged(path);
+					}
+					if (type != EventType.NodeDataChanged) {
+						childChanged(parent);
+					}
+					dataChanged(parent, path, type == EventType.NodeDeleted);
+				} catch (Throwable t) {
+					logger.error("Failed to process " + type + " of " + path + ", cause: " + t.getMessage(), t);
+				}
+			}
+		});
+	}
+
+	private void childChanged(String path) {
+		Set<ChildListener> listeners = childListeners.get(path);
+		if (listeners == null || listeners.isEmpty()) {
+			return;
+		}
+
+		List<String> children = transporter.getChildren(path);
+		for (ChildListener listener : listeners) {
+			try {
+				listener.childChanged(path, children);
+			} catch (Throwable t) {
+				logger.error("Failed to notify child changed of " + path + ", cause: " + t.getMessage(), t);
+			}
+		}
+	}
+
+	private void dataChanged(String path, String childPath, boolean deleted) {
+		Set<DataListener> listeners = dataListeners.get(path);
+		if (listeners == null || listeners.isEmpty()) {
+			return;
+		}
+
+		Map<String, String> datas = this.getDatas(path);
+		String data = deleted ? null : transporter.getData(childPath);
+		if (data == null) {
+			datas.remove(childPath);
+		} else {
+			datas.put(childPath, data);
+		}
+		this.notifyData(path, listeners, datas);
+	}
+
+	private void reloadData(String path) {
+		Set<DataListener> listeners = dataListeners.get(path);
+		if (listeners == null || listeners.isEmpty()) {
+			return;
+		}
+
+		Map<String, String> datas = this.getDatas(path);
+		datas.clear();
+		for (String child : transporter.getChildren(path)) {
+			String childPath = path + "/" + child;
+			String data = transporter.getData(childPath);
+			if (data != null) {
+				datas.put(childPath, data);
+			}
+		}
+		if (!datas.isEmpty()) {
+			this.notifyData(path, listeners, datas);
+		}
+	}
+
+	private Map<String, String> getDatas(String path) {
+		Map<String, String> datas = childrenDatas.get(path);
+		if (datas == null) {
+			childrenDatas.putIfAbsent(path, new ConcurrentHashMap<String, String>());
+			datas = childrenDatas.get(path);
+		}
+		return datas;
+	}
+
+	private void notifyData(String path, Set<DataListener> listeners, Map<String, String> datas) {
+		for (DataListener listener : listeners) {
+			try {
+				listener.dataChanged(path, datas);
+			} catch (Throwable t) {
+				logger.error("Failed to notify data changed of " + path + ", cause: " + t.getMessage(), t);
+			}
+		}
+	}
+
+	public void close() {
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,65 @@
+package io.coon.zookeeper.transporter;
+
+/**
+ * ZooKeeper批量事务中的单个操作
+ *
+ * @author lry
+ */
+public class ZkOp {
+
+	public enum Type {
+		CREATE, DELETE, SET_DATA
+	}
+
+	private final Type type;
+	private final String path;
+	private final boolean ephemeral;
+	private final String data;
+
+	private ZkOp(Type type, String path, boolean ephemeral, String data) {
+		this.type = type;
+		this.path = path;
+		this.ephemeral = ephemeral;
+		this.data = data;
+	}
+
+	/**
+	 * 创建节点，父节点不存在时由批量操作自动创建
+	 */
+	public static ZkOp create(String path, boolean ephemeral) {
+		return new ZkOp(Type.CREATE, path, ephemeral, null);
+	}
+
+	public static ZkOp delete(String path) {
+		return new ZkOp(Type.DELETE, path, false, null);
+	}
+
+	/**
+	 * 写入已存在节点的数据
+	 */
+	public static ZkOp setData(String path, String data) {
+		return new ZkOp(Type.SET_DATA, path, false, data);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isEphemeral() {
+		return ephemeral;
+	}
+
+	public String getData() {
+		return data;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + path;
+	}
+
+}
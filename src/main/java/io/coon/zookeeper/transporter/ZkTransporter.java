@@ -1,5 +1,6 @@
 package io.coon.zookeeper.transporter;
 
+import io.coon.support.CoonFuture;
 import io.neural.NURL;
 import io.neural.extension.NPI;
 
@@ -15,9 +16,44 @@ public interface ZkTransporter {
 	void close();
 	
 	void create(String path, boolean ephemeral);
+	/**
+	 * 创建顺序节点，父节点不存在时自动创建
+	 * 
+	 * @param path 节点前缀路径
+	 * @param ephemeral 是否临时节点
+	 * @return 实际创建的节点路径
+	 */
+	String createSequential(String path, boolean ephemeral);
 	void delete(String path);
 	List<String> getChildren(String path);
+	/**
+	 * 批量操作，在一个ZooKeeper multi事务中提交，任一操作失败则全部回滚并抛出IllegalStateException<br>
+	 * 创建操作的父节点不存在时自动创建(不在事务内)，本会话已创建的父节点不再重复创建
+	 * 
+	 * @param ops 操作列表
+	 */
+	void multi(List<ZkOp> ops);
 	
+	// ===== Listener Path Node, 一次性监听单个节点的变更(删除、修改或会话事件)，触发后自动失效
+	/**
+	 * 添加一次性节点监听
+	 * 
+	 * @param path 节点路径
+	 * @param listener 节点监听器
+	 * @return 节点当前是否存在，不存在时监听器不一定会被触发
+	 */
+	boolean addNodeListener(String path, NodeListener listener);
+	void removeNodeListener(String path, NodeListener listener);
+	
+	/**
+	 * 监听以root为根的整棵树<br>
+	 * watch=tree时本地缓存整棵树，其下的子节点监听和子节点查询由本地缓存服务<br>
+	 * watch=persistent时注册永久递归监听，其下的子节点监听和数据监听由其回调，无需重新注册<br>
+	 * 未设置或客户端、服务端不支持时忽略，使用一次性Watcher
+	 * 
+	 * @param root 根路径
+	 */
+	void watchTree(String root);
 	List<String> addChildListener(String path, ChildListener listener);
 	void removeChildListener(String path, ChildListener listener);
 
@@ -27,6 +63,53 @@ public interface ZkTransporter {
 	void createData(String path, String json);
 	String getData(String path);
 	List<String> getChildrenData(String path);
+	
+	// ===== Async, 不阻塞调用线程，结果语义与对应的同步方法相同
+	/**
+	 * 异步创建节点，父节点不存在时自动创建，节点已存在视为成功
+	 * 
+	 * @param path 节点路径
+	 * @param ephemeral 是否临时节点
+	 * @return
+	 */
+	CoonFuture<Void> createAsync(String path, boolean ephemeral);
+	/**
+	 * 异步删除节点，节点不存在视为成功
+	 * 
+	 * @param path 节点路径
+	 * @return
+	 */
+	CoonFuture<Void> deleteAsync(String path);
+	/**
+	 * 异步获取子节点，节点不存在时返回空列表
+	 * 
+	 * @param path 节点路径
+	 * @return
+	 */
+	CoonFuture<List<String>> getChildrenAsync(String path);
+	/**
+	 * 异步创建持久节点并写入数据，节点已存在时覆盖数据
+	 * 
+	 * @param path 节点路径
+	 * @param json 数据
+	 * @return
+	 */
+	CoonFuture<Void> createDataAsync(String path, String json);
+	/**
+	 * 异步获取节点数据，节点不存在时返回null
+	 * 
+	 * @param path 节点路径
+	 * @return
+	 */
+	CoonFuture<String> getDataAsync(String path);
+	/**
+	 * 异步获取所有子节点的非空数据
+	 * 
+	 * @param path 节点路径
+	 * @return
+	 */
+	CoonFuture<List<String>> getChildrenDataAsync(String path);
+	
 	// ===== Listener Path Data, 只监听子节点数据变更操作
 	void addDataListener(String path, DataListener listener);
 	void removeDataListener(String path, DataListener listener);
@@ -35,6 +118,10 @@ public interface ZkTransporter {
 		void childChanged(String path, List<String> children);
 	}
 
+	public interface NodeListener {
+		void nodeChanged(String path);
+	}
+
 	public interface StateListener {
 		int DISCONNECTED = 0;
 		int CONNECTED = 1;
@@ -5,19 +5,27 @@ import io.neural.NURL;
 import io.neural.extension.Extension;
 import io.neural.micro.ConcurrentHashSet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.I0Itec.zkclient.IZkChildListener;
 import org.I0Itec.zkclient.IZkDataListener;
 import org.I0Itec.zkclient.IZkStateListener;
 import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.ZkConnection;
 import org.I0Itec.zkclient.exception.ZkNoNodeException;
 import org.I0Itec.zkclient.exception.ZkNodeExistsException;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.Watcher.Event.KeeperState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,15 +36,16 @@ public class ZkclientZkTransporter extends AbstractZkTransporter<IZkChildListene
 	private static final Logger logger = LoggerFactory.getLogger(ZkclientZkTransporter.class);
 	
 	private ZkClient client;
+	private ZkConnection connection;
 	private volatile KeeperState state = KeeperState.SyncConnected;
 
 	@Override
 	public void connect(NURL nurl) {
 		super.connect(nurl);
-		client = new ZkClient(
-				nurl.getBackupAddress(),
-				nurl.getParameter(Consts.SESSION_TIMEOUT_KEY, Consts.DEFAULT_SESSION_TIMEOUT),
-				nurl.getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_REGISTRY_CONNECT_TIMEOUT));
+		// 保留连接引用，以便取得原生ZooKeeper注册永久递归监听
+		connection = new ZkConnection(nurl.getBackupAddress(),
+				nurl.getParameter(Consts.SESSION_TIMEOUT_KEY, Consts.DEFAULT_SESSION_TIMEOUT));
+		client = new ZkClient(connection, nurl.getParameter(Consts.TIMEOUT_KEY, Consts.DEFAULT_REGISTRY_CONNECT_TIMEOUT));
 		
 		client.subscribeStateChanges(new IZkStateListener() {
 			@Override
@@ -84,6 +93,15 @@ public class ZkclientZkTransporter extends AbstractZkTransporter<IZkChildListene
 		}
 	}
 	
+	@Override
+	public String doCreateSequential(String path, boolean ephemeral) {
+		if (ephemeral) {
+			return client.createEphemeralSequential(path, null);
+		} else {
+			return client.createPersistentSequential(path, null);
+		}
+	}
+	
 	@Override
 	public void doCreateData(String path, String json) {
 		try {
@@ -93,7 +111,46 @@ public class ZkclientZkTransporter extends AbstractZkTransporter<IZkChildListene
 	}
 
 	@Override
-	public void delete(String path) {
+	public void doMulti(List<ZkOp> ops) {
+		List<Op> list = new ArrayList<Op>(ops.size());
+		for (ZkOp op : ops) {
+			switch (op.getType()) {
+			case CREATE:
+				list.add(Op.create(op.getPath(), null, ZooDefs.Ids.OPEN_ACL_UNSAFE, op.isEphemeral() ? CreateMode.EPHEMERAL : CreateMode.PERSISTENT));
+				break;
+			case DELETE:
+				list.add(Op.delete(op.getPath(), -1));
+				break;
+			default:
+				list.add(Op.setData(op.getPath(), this.serialize(op.getData()), -1));
+				break;
+			}
+		}
+		
+		try {
+			client.multi(list);
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * 与ZkClient缺省的SerializableSerializer保持一致，readData可正常读取
+	 */
+	private byte[] serialize(String data) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream stream = new ObjectOutputStream(bytes);
+			stream.writeObject(data);
+			stream.close();
+			return bytes.toByteArray();
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void doDelete(String path) {
 		try {
 			client.delete(path);
 		} catch (ZkNoNodeException e) {
@@ -118,6 +175,11 @@ public class ZkclientZkTransporter extends AbstractZkTransporter<IZkChildListene
 	public void doClose() {
 		client.close();
 	}
+
+	@Override
+	protected ZooKeeper getZooKeeper() {
+		return connection.getZookeeper();
+	}
 	
 	@Override
 	public String doGetChildrenData(String path) {
@@ -128,11 +190,53 @@ public class ZkclientZkTransporter extends AbstractZkTransporter<IZkChildListene
         }
 	}
 
+	private final Map<NodeListener, IZkDataListener> nodeListenerMap = new ConcurrentHashMap<NodeListener, IZkDataListener>();
+	
+	@Override
+	public boolean addNodeListener(final String path, final NodeListener listener) {
+		IZkDataListener iZkDataListener = new IZkDataListener() {
+			private final AtomicBoolean fired = new AtomicBoolean(false);
+			
+			@Override
+			public void handleDataChange(String dataPath, Object data) throws Exception {
+				this.fire(dataPath);
+			}
+			
+			@Override
+			public void handleDataDeleted(String dataPath) throws Exception {
+				this.fire(dataPath);
+			}
+			
+			// zkclient的数据监听会自动重新注册，这里只触发一次
+			private void fire(String dataPath) {
+				if (fired.compareAndSet(false, true)) {
+					removeNodeListener(path, listener);
+					listener.nodeChanged(dataPath);
+				}
+			}
+		};
+		
+		nodeListenerMap.put(listener, iZkDataListener);
+		client.subscribeDataChanges(path, iZkDataListener);
+		return client.exists(path);
+	}
+	
+	@Override
+	public void removeNodeListener(String path, NodeListener listener) {
+		IZkDataListener iZkDataListener = nodeListenerMap.remove(listener);
+		if (iZkDataListener != null) {
+			client.unsubscribeDataChanges(path, iZkDataListener);
+		}
+	}
+
 	@Override
 	public IZkChildListener createTargetChildListener(String path, final ChildListener listener) {
 		return new IZkChildListener() {
 			@Override
 			public void handleChildChange(String parentPath, List<String> currentChilds) throws Exception {
+				if (currentChilds == null) { // 节点已被删除
+					forgetPath(parentPath);
+				}
 				listener.childChanged(parentPath, currentChilds);
 			}
 		};
@@ -157,6 +261,10 @@ public class ZkclientZkTransporter extends AbstractZkTransporter<IZkChildListene
 	
 	@Override
 	public void addDataListener(final String path, final DataListener listener) {
+		if (this.addPersistentDataListener(path, listener)) {
+			return;
+		}
+		
 		IZkChildListener iZkChildListener = iZkChildListenerMap.get(path);
 		if(iZkChildListener != null){
 			return;
@@ -224,7 +332,7 @@ public class ZkclientZkTransporter extends AbstractZkTransporter<IZkChildListene
 	
 	@Override
 	public void removeDataListener(String path, DataListener listener) {
-		
+		this.removePersistentDataListener(path, listener);
 	}
 	
 	public void doAddDataListener(String path, DataListener listener) {
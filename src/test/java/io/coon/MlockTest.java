@@ -0,0 +1,46 @@
+package io.coon;
+
+import io.coon.api.Mlock;
+import io.neural.NURL;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MlockTest {
+
+	public static void main(String[] args) {
+		try {
+			NURL nurl = NURL.valueOf("redis://127.0.0.1:6379/mlock?lock=order&lease=10000");
+			final Mlock mlock = Coon.CF.getCoon(nurl, Mlock.class);
+
+			final CountDownLatch latch = new CountDownLatch(5);
+			for (int i = 0; i < 5; i++) {
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (mlock.tryLock(30, TimeUnit.SECONDS)) {
+								try {
+									System.out.println(Thread.currentThread().getName() + " locked");
+									Thread.sleep(1000);
+								} finally {
+									mlock.unlock();
+								}
+							}
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						} finally {
+							latch.countDown();
+						}
+					}
+				}, "mlock-test-" + i).start();
+			}
+
+			latch.await();
+			Coon.CF.destroyMregAll();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package io.coon.redis;
+
+import io.neural.NURL;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 增量事件修补本地快照，序号不连续时回退为全量加载。不连接Redis，直接调用RedisMreg的私有方法。
+ */
+public class RedisDeltaTest {
+
+	private static final String KEY = "/coon/io.coon.test.TestService/providers";
+
+	private static final String P1 = "dubbo://10.20.153.11:20880/io.coon.test.TestService"
+			+ "?interface=io.coon.test.TestService&version=1.0.0&category=providers&dynamic=false";
+	private static final String P2 = "dubbo://10.20.153.12:20880/io.coon.test.TestService"
+			+ "?interface=io.coon.test.TestService&version=1.0.0&category=providers&dynamic=false";
+	private static final String A1 = "10.20.153.11:20880";
+	private static final String A2 = "10.20.153.12:20880";
+
+	// 连续序号的事件增量修补，重复事件忽略
+	@Test
+	public void testSequence() throws Exception {
+		RedisMreg mreg = new RedisMreg();
+		JedisPool source = new JedisPool("127.0.0.1", 6379);
+		try {
+			Object snapshot = putSnapshot(mreg, source, KEY, 10);
+
+			Assert.assertTrue("seq 11 applies", applyDelta(mreg, source, KEY, "register 11 " + P1));
+			Assert.assertTrue("seq 12 applies", applyDelta(mreg, source, KEY, "register 12 " + P2));
+			Assert.assertEquals(12, seq(snapshot));
+			Assert.assertEquals(Arrays.asList(A1, A2), nurls(snapshot));
+
+			// 重复事件及已包含在快照中的事件不再修补
+			Assert.assertTrue("duplicate seq 11 is skipped", applyDelta(mreg, source, KEY, "unregister 11 " + P1));
+			Assert.assertTrue("old seq 5 is skipped", applyDelta(mreg, source, KEY, "unregister 5 " + P1));
+			Assert.assertEquals(12, seq(snapshot));
+			Assert.assertEquals(Arrays.asList(A1, A2), nurls(snapshot));
+
+			Assert.assertTrue("seq 13 applies", applyDelta(mreg, source, KEY, "unregister 13 " + P1));
+			Assert.assertEquals(13, seq(snapshot));
+			Assert.assertEquals(Arrays.asList(A2), nurls(snapshot));
+		} finally {
+			source.destroy();
+		}
+	}
+
+	// 无法增量修补时返回false，由handleEvent全量加载，快照保持不变
+	@Test
+	public void testFallback() throws Exception {
+		RedisMreg mreg = new RedisMreg();
+		JedisPool source = new JedisPool("127.0.0.1", 6379);
+		JedisPool other = new JedisPool("127.0.0.1", 6380);
+		try {
+			Object snapshot = putSnapshot(mreg, source, KEY, 10);
+
+			Assert.assertFalse("gap 10 -> 12 falls back to reload", applyDelta(mreg, source, KEY, "register 12 " + P1));
+			Assert.assertFalse("gap 10 -> 100 falls back to reload", applyDelta(mreg, source, KEY, "register 100 " + P1));
+			Assert.assertFalse("event from another server falls back to reload", applyDelta(mreg, other, KEY, "register 11 " + P1));
+			Assert.assertFalse("missing snapshot falls back to reload", applyDelta(mreg, source, KEY + "2", "register 11 " + P1));
+			Assert.assertFalse("legacy event without seq falls back to reload", applyDelta(mreg, source, KEY, "register"));
+			Assert.assertFalse("non-numeric seq falls back to reload", applyDelta(mreg, source, KEY, "register x " + P1));
+			Assert.assertFalse("unknown event falls back to reload", applyDelta(mreg, source, KEY, "renew 11 " + P1));
+			Assert.assertEquals(10, seq(snapshot));
+			Assert.assertEquals(Collections.<String>emptyList(), nurls(snapshot));
+
+			// 回退后仍可继续按序修补
+			Assert.assertTrue("seq 11 applies after fallbacks", applyDelta(mreg, source, KEY, "register 11 " + P1));
+			Assert.assertEquals(Arrays.asList(A1), nurls(snapshot));
+		} finally {
+			source.destroy();
+			other.destroy();
+		}
+	}
+
+	private static Object putSnapshot(RedisMreg mreg, JedisPool source, String key, long seq) throws Exception {
+		Class<?> type = Class.forName(RedisMreg.class.getName() + "$Snapshot");
+		Constructor<?> constructor = type.getDeclaredConstructor(JedisPool.class, long.class);
+		constructor.setAccessible(true);
+		Object snapshot = constructor.newInstance(source, seq);
+		Field field = RedisMreg.class.getDeclaredField("snapshots");
+		field.setAccessible(true);
+		@SuppressWarnings("unchecked")
+		Map<String, Object> snapshots = (Map<String, Object>) field.get(mreg);
+		snapshots.put(key, snapshot);
+		return snapshot;
+	}
+
+	private static boolean applyDelta(RedisMreg mreg, JedisPool source, String key, String msg) throws Exception {
+		Method method = RedisMreg.class.getDeclaredMethod("applyDelta", JedisPool.class, String.class, String.class);
+		method.setAccessible(true);
+		try {
+			return (Boolean) method.invoke(mreg, source, key, msg);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static long seq(Object snapshot) throws Exception {
+		Field field = snapshot.getClass().getDeclaredField("seq");
+		field.setAccessible(true);
+		return field.getLong(snapshot);
+	}
+
+	// 快照中未过期NURL的地址，排序后返回
+	private static List<String> nurls(Object snapshot) throws Exception {
+		Method method = snapshot.getClass().getDeclaredMethod("getNurls", long.class);
+		method.setAccessible(true);
+		List<String> result = new ArrayList<String>();
+		for (Object nurl : (List<?>) method.invoke(snapshot, System.currentTimeMillis())) {
+			result.add(((NURL) nurl).getAddress());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+}
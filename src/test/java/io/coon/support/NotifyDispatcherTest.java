@@ -0,0 +1,128 @@
+package io.coon.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NotifyDispatcherTest {
+
+	// 同一订阅的通知按分发顺序投递，投递完后槽位全部移除
+	@Test
+	public void testOrder() throws Exception {
+		NotifyDispatcher dispatcher = new NotifyDispatcher("NotifyDispatcherTest", 4, 64);
+		try {
+			final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+			int count = 1000;
+			for (int i = 0; i < count; i++) {
+				final int seq = i;
+				dispatcher.dispatch("nurl", Arrays.asList("nurl", "listener", "category" + i), new Runnable() {
+					@Override
+					public void run() {
+						received.add(seq);
+					}
+				}, false);
+			}
+			await(dispatcher, count);
+
+			Assert.assertEquals(count, received.size());
+			for (int i = 0; i < count; i++) {
+				Assert.assertEquals("out of order at " + i, i, received.get(i).intValue());
+			}
+			Assert.assertEquals("idle slots left", 0, dispatcher.getSlotCount());
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	// 排队期间同一合并Key的通知只投递最新的一次
+	@Test
+	public void testCoalesce() throws Exception {
+		NotifyDispatcher dispatcher = new NotifyDispatcher("NotifyDispatcherTest", 1, 64);
+		try {
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			dispatcher.dispatch("nurl", Arrays.asList("nurl", "listener", "blocker"), new Runnable() {
+				@Override
+				public void run() {
+					blocked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, false);
+			Assert.assertTrue("blocker not started", blocked.await(5, TimeUnit.SECONDS));
+
+			final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+			List<?> key = Arrays.asList("nurl", "listener", "providers");
+			for (int i = 0; i < 100; i++) {
+				final int seq = i;
+				dispatcher.dispatch("nurl", key, new Runnable() {
+					@Override
+					public void run() {
+						received.add(seq);
+					}
+				}, false);
+			}
+			release.countDown();
+			await(dispatcher, 2);
+
+			Assert.assertEquals(Arrays.asList(99), received);
+			Assert.assertEquals(99, dispatcher.getCoalescedCount());
+			Assert.assertEquals("idle slots left", 0, dispatcher.getSlotCount());
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	// 同步投递在当前线程执行，异常直接抛出，投递后槽位同样移除
+	@Test
+	public void testSync() throws Exception {
+		NotifyDispatcher dispatcher = new NotifyDispatcher("NotifyDispatcherTest", 1, 64);
+		try {
+			final Thread caller = Thread.currentThread();
+			final boolean[] same = new boolean[1];
+			dispatcher.dispatch("nurl", Arrays.asList("nurl", "listener", "providers"), new Runnable() {
+				@Override
+				public void run() {
+					same[0] = Thread.currentThread() == caller;
+				}
+			}, true);
+			Assert.assertTrue("sync delivery ran on another thread", same[0]);
+
+			try {
+				dispatcher.dispatch("nurl", Arrays.asList("nurl", "listener", "routers"), new Runnable() {
+					@Override
+					public void run() {
+						throw new IllegalArgumentException("boom");
+					}
+				}, true);
+				Assert.fail("sync delivery failure not thrown");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			Assert.assertEquals(1, dispatcher.getFailedCount());
+			Assert.assertEquals("idle slots left", 0, dispatcher.getSlotCount());
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	private static void await(NotifyDispatcher dispatcher, long delivered) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (dispatcher.getDeliveredCount() < delivered || dispatcher.getSlotCount() > 0) {
+			if (System.currentTimeMillis() > deadline) {
+				break;
+			}
+			Thread.sleep(10);
+		}
+	}
+
+}
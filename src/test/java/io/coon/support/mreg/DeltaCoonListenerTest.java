@@ -0,0 +1,177 @@
+package io.coon.support.mreg;
+
+import io.coon.support.CoonFuture;
+import io.coon.support.CoonListener;
+import io.coon.support.DeltaCoonListener;
+import io.neural.NURL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeltaCoonListenerTest {
+
+	private static final String SUBSCRIBE = "consumer://10.20.153.10/io.coon.test.TestService"
+			+ "?interface=io.coon.test.TestService&version=1.0.0&category=providers,routers";
+
+	// 第一次全量，之后只回调新增和删除的部分，没有变化时不回调
+	@Test
+	public void testAddedAndRemoved() {
+		LocalMreg mreg = new LocalMreg();
+		NURL nurl = NURL.valueOf(SUBSCRIBE);
+		RecordingListener listener = new RecordingListener();
+		mreg.subscribe(nurl, listener);
+
+		NURL p1 = provider(1), p2 = provider(2), p3 = provider(3);
+		mreg.notify(nurl, listener, Arrays.asList(p1, p2));
+		Assert.assertEquals(1, listener.full.size());
+		Assert.assertEquals(Arrays.asList(p1, p2), listener.full.get(0));
+		Assert.assertEquals(0, listener.added.size());
+
+		mreg.notify(nurl, listener, Arrays.asList(p2, p3));
+		Assert.assertEquals(1, listener.full.size());
+		Assert.assertEquals(1, listener.added.size());
+		Assert.assertEquals(Arrays.asList(p3), listener.added.get(0));
+		Assert.assertEquals(Arrays.asList(p1), listener.removed.get(0));
+
+		// 顺序变化不算变化
+		mreg.notify(nurl, listener, Arrays.asList(p3, p2));
+		Assert.assertEquals(1, listener.added.size());
+
+		// 全部下线时收到empty协议数据，只回调删除部分，不含empty数据
+		mreg.notify(nurl, listener, Arrays.asList(empty(nurl, "providers")));
+		Assert.assertEquals(2, listener.added.size());
+		Assert.assertEquals(Collections.<NURL>emptyList(), listener.added.get(1));
+		Assert.assertEquals(new HashSet<NURL>(Arrays.asList(p2, p3)), new HashSet<NURL>(listener.removed.get(1)));
+
+		// 重新上线只回调新增部分
+		mreg.notify(nurl, listener, Arrays.asList(p1));
+		Assert.assertEquals(3, listener.added.size());
+		Assert.assertEquals(Arrays.asList(p1), listener.added.get(2));
+		Assert.assertEquals(Collections.<NURL>emptyList(), listener.removed.get(2));
+	}
+
+	// 每个分类各自第一次全量，各自对比
+	@Test
+	public void testCategories() {
+		LocalMreg mreg = new LocalMreg();
+		NURL nurl = NURL.valueOf(SUBSCRIBE);
+		RecordingListener listener = new RecordingListener();
+		mreg.subscribe(nurl, listener);
+
+		NURL p1 = provider(1), r1 = router(1), r2 = router(2);
+		mreg.notify(nurl, listener, Arrays.asList(p1));
+		mreg.notify(nurl, listener, Arrays.asList(r1));
+		Assert.assertEquals(2, listener.full.size());
+		Assert.assertEquals(0, listener.added.size());
+
+		mreg.notify(nurl, listener, Arrays.asList(r1, r2));
+		Assert.assertEquals(2, listener.full.size());
+		Assert.assertEquals(Arrays.asList(r2), listener.added.get(0));
+		Assert.assertEquals(Collections.<NURL>emptyList(), listener.removed.get(0));
+	}
+
+	// 取消订阅后重新订阅，第一次通知重新全量回调
+	@Test
+	public void testUnsubscribe() {
+		LocalMreg mreg = new LocalMreg();
+		NURL nurl = NURL.valueOf(SUBSCRIBE);
+		RecordingListener listener = new RecordingListener();
+		mreg.subscribe(nurl, listener);
+
+		NURL p1 = provider(1), p2 = provider(2);
+		mreg.notify(nurl, listener, Arrays.asList(p1));
+		mreg.unsubscribe(nurl, listener);
+		mreg.subscribe(nurl, listener);
+		mreg.notify(nurl, listener, Arrays.asList(p1, p2));
+		Assert.assertEquals(2, listener.full.size());
+		Assert.assertEquals(Arrays.asList(p1, p2), listener.full.get(1));
+		Assert.assertEquals(0, listener.added.size());
+	}
+
+	private static NURL provider(int i) {
+		return NURL.valueOf("dubbo://10.20.153.1" + i + ":20880/io.coon.test.TestService"
+				+ "?interface=io.coon.test.TestService&version=1.0.0&category=providers");
+	}
+
+	private static NURL router(int i) {
+		return NURL.valueOf("route://0.0.0.0/io.coon.test.TestService?interface=io.coon.test.TestService"
+				+ "&version=1.0.0&category=routers&rule=r" + i);
+	}
+
+	private static NURL empty(NURL nurl, String category) {
+		return nurl.setProtocol("empty").addParameter("category", category);
+	}
+
+	// 未connect，无磁盘缓存，在通知线程内同步回调
+	private static class LocalMreg extends AbstractMreg {
+
+		@Override
+		public boolean available() {
+			return true;
+		}
+
+		@Override
+		public void registerAll(Collection<NURL> nurls) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void subscribeAll(Map<NURL, CoonListener<NURL>> subscriptions) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CoonFuture<Void> registerAsync(NURL nurl) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CoonFuture<Void> unregisterAsync(NURL nurl) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CoonFuture<Void> subscribeAsync(NURL nurl, CoonListener<NURL> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CoonFuture<Void> unsubscribeAsync(NURL nurl, CoonListener<NURL> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CoonFuture<List<NURL>> lookupAsync(NURL nurl) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+	private static class RecordingListener implements DeltaCoonListener<NURL> {
+
+		private final List<List<NURL>> full = new ArrayList<List<NURL>>();
+		private final List<List<NURL>> added = new ArrayList<List<NURL>>();
+		private final List<List<NURL>> removed = new ArrayList<List<NURL>>();
+
+		@Override
+		public void notify(List<NURL> nurls) {
+			full.add(new ArrayList<NURL>(nurls));
+		}
+
+		@Override
+		public void notifyDelta(List<NURL> added, List<NURL> removed) {
+			this.added.add(new ArrayList<NURL>(added));
+			this.removed.add(new ArrayList<NURL>(removed));
+		}
+
+	}
+
+}
@@ -0,0 +1,183 @@
+package io.coon.support.mreg;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MregCacheStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		File file = newFile();
+		MregCacheStore store = new MregCacheStore(file);
+		store.load();
+		Assert.assertTrue("first put writes", store.put("s1", Arrays.asList("a://1", "a://2")));
+		Assert.assertFalse("same snapshot is not written again", store.put("s1", Arrays.asList("a://1", "a://2")));
+		store.put("s2", Arrays.asList("b://1"));
+		store.put("s1", Arrays.asList("a://3"));
+		store.put("s3", Collections.<String>emptyList());
+
+		MregCacheStore reloaded = new MregCacheStore(file);
+		reloaded.load();
+		Assert.assertEquals(Arrays.asList("a://3"), reloaded.get("s1"));
+		Assert.assertEquals(Arrays.asList("b://1"), reloaded.get("s2"));
+		Assert.assertEquals(Collections.<String>emptyList(), reloaded.get("s3"));
+		Assert.assertNull(reloaded.get("s4"));
+		Assert.assertEquals(3, reloaded.keys().size());
+	}
+
+	@Test
+	public void testCorruptedCrc() throws Exception {
+		File file = newFile();
+		MregCacheStore store = new MregCacheStore(file);
+		store.load();
+		store.put("s1", Arrays.asList("a://1"));
+		store.put("s2", Arrays.asList("b://1"));
+
+		// 改写最后一条记录内容的最后一个字节
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length() - 1);
+			int last = raf.read();
+			raf.seek(raf.length() - 1);
+			raf.write(last ^ 0xFF);
+		} finally {
+			raf.close();
+		}
+
+		MregCacheStore reloaded = new MregCacheStore(file);
+		reloaded.load();
+		Assert.assertEquals(Arrays.asList("a://1"), reloaded.get("s1"));
+		Assert.assertNull(reloaded.get("s2"));
+	}
+
+	@Test
+	public void testTruncatedTail() throws Exception {
+		File file = newFile();
+		MregCacheStore store = new MregCacheStore(file);
+		store.load();
+		store.put("s1", Arrays.asList("a://1"));
+		store.put("s2", Arrays.asList("b://1"));
+
+		// 模拟写入最后一条记录时进程退出
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 3);
+		} finally {
+			raf.close();
+		}
+
+		MregCacheStore reloaded = new MregCacheStore(file);
+		reloaded.load();
+		Assert.assertEquals(Arrays.asList("a://1"), reloaded.get("s1"));
+		Assert.assertNull(reloaded.get("s2"));
+
+		// 下次追加前截掉不完整的记录，新记录可被读出
+		reloaded.put("s3", Arrays.asList("c://1"));
+		MregCacheStore again = new MregCacheStore(file);
+		again.load();
+		Assert.assertEquals(Arrays.asList("a://1"), again.get("s1"));
+		Assert.assertNull(again.get("s2"));
+		Assert.assertEquals(Arrays.asList("c://1"), again.get("s3"));
+	}
+
+	@Test
+	public void testLegacyProperties() throws Exception {
+		File file = newFile();
+		Properties properties = new Properties();
+		properties.setProperty("s1", "a://1 a://2");
+		properties.setProperty("s2", "");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "legacy mreg cache");
+		} finally {
+			out.close();
+		}
+
+		MregCacheStore store = new MregCacheStore(file);
+		store.load();
+		Assert.assertEquals(Arrays.asList("a://1", "a://2"), store.get("s1"));
+		Assert.assertEquals(Collections.<String>emptyList(), store.get("s2"));
+
+		// 已转换为新格式
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Assert.assertEquals("MREG", new String(bytes, 0, 4, "US-ASCII"));
+		MregCacheStore reloaded = new MregCacheStore(file);
+		reloaded.load();
+		Assert.assertEquals(Arrays.asList("a://1", "a://2"), reloaded.get("s1"));
+	}
+
+	@Test
+	public void testCompactWithSeveralWriters() throws Exception {
+		final File file = newFile();
+		final int writers = 3;
+		final int services = 20;
+		final int rounds = 60; // 每个写入者1200条记录，超过压缩阈值，压缩时其它写入者仍在追加
+		final CountDownLatch latch = new CountDownLatch(writers);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						MregCacheStore store = new MregCacheStore(file);
+						store.load();
+						for (int r = 0; r < rounds; r++) {
+							for (int s = 0; s < services; s++) {
+								store.put("w" + writer + "-s" + s, Arrays.asList("x://" + writer + "/" + s + "/" + r));
+							}
+						}
+					} catch (Throwable t) {
+						error.compareAndSet(null, t);
+					} finally {
+						latch.countDown();
+					}
+				}
+			}, "MregCacheStoreTest-" + w).start();
+		}
+		latch.await();
+		if (error.get() != null) {
+			throw new IllegalStateException(error.get());
+		}
+
+		MregCacheStore store = new MregCacheStore(file);
+		store.load();
+		Assert.assertEquals(writers * services, store.keys().size());
+		for (int w = 0; w < writers; w++) {
+			for (int s = 0; s < services; s++) {
+				Assert.assertEquals(Arrays.asList("x://" + w + "/" + s + "/" + (rounds - 1)), store.get("w" + w + "-s" + s));
+			}
+		}
+
+		// 压缩后只保留每个服务的最新快照
+		long before = file.length();
+		store.compact();
+		Assert.assertTrue("compact shrinks the file: " + before + " -> " + file.length(), file.length() < before);
+		MregCacheStore compacted = new MregCacheStore(file);
+		compacted.load();
+		Assert.assertEquals(writers * services, compacted.keys().size());
+		Assert.assertEquals(Arrays.asList("x://0/0/" + (rounds - 1)), compacted.get("w0-s0"));
+	}
+
+	// 缓存文件及其锁文件都在临时目录下，测试后删除
+	private File newFile() {
+		return new File(folder.getRoot(), "mreg.cache");
+	}
+
+}
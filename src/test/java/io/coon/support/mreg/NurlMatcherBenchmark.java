@@ -0,0 +1,83 @@
+package io.coon.support.mreg;
+
+import io.neural.NURL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NurlMatcherBenchmark {
+
+	private static final int PROVIDERS = 1000;
+
+	private NURL consumer;
+	private List<NURL> providers;
+	private NurlMatcher matcher;
+
+	@Setup
+	public void setup() {
+		consumer = NURL.valueOf("consumer://10.20.153.10/io.coon.test.TestService"
+				+ "?interface=io.coon.test.TestService&group=g1,g2,g3&version=1.0.0&category=providers,routers,configurators");
+		providers = new ArrayList<NURL>();
+		for (int i = 0; i < PROVIDERS; i++) {
+			providers.add(NURL.valueOf("dubbo://10.20." + (i / 250) + "." + (i % 250) + ":20880/io.coon.test.TestService"
+					+ "?interface=io.coon.test.TestService&group=g" + (i % 4) + "&version=1.0.0&category=providers"));
+		}
+		matcher = NurlMatcher.compile(consumer);
+
+		// 两种方式的匹配结果应一致
+		if (isMatch() != compiled()) {
+			throw new IllegalStateException("isMatch " + isMatch() + " != compiled " + compiled());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PROVIDERS)
+	public int isMatch() {
+		int matched = 0;
+		for (NURL provider : providers) {
+			if (MregCommon.isMatch(consumer, provider)) {
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PROVIDERS)
+	public int compiled() {
+		int matched = 0;
+		for (NURL provider : providers) {
+			if (matcher.isMatch(provider)) {
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(NurlMatcherBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,79 @@
+package io.coon.support.mreg;
+
+import io.neural.NURL;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NurlMatcherTest {
+
+	private static final String[] CONSUMERS = {
+		"consumer://10.20.153.10/io.coon.test.TestService?interface=io.coon.test.TestService&group=g1&version=1.0.0",
+		"consumer://10.20.153.10/io.coon.test.TestService?interface=io.coon.test.TestService&group=g1,g2&version=1.0.0&category=providers,routers",
+		"consumer://10.20.153.10/io.coon.test.TestService?interface=io.coon.test.TestService&group=*&version=*&category=*",
+		"consumer://10.20.153.10/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0&category=-routers",
+		"consumer://10.20.153.10/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0&classifier=c1",
+		"consumer://10.20.153.10/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0&enabled=*",
+		"admin://0.0.0.0/*?interface=*&group=*&version=*&classifier=*&category=*&enabled=*&check=false",
+		"consumer://10.20.153.10/io.coon.test.OtherService?interface=io.coon.test.OtherService&version=1.0.0",
+	};
+
+	private static final String[] PROVIDERS = {
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&group=g1&version=1.0.0",
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&group=g2&version=1.0.0&category=providers",
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&group=g3&version=1.0.0",
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0",
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&version=2.0.0",
+		"route://0.0.0.0/io.coon.test.TestService?interface=io.coon.test.TestService&group=g1&version=1.0.0&category=routers",
+		"override://0.0.0.0/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0&category=configurators",
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0&classifier=c1",
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0&classifier=c2",
+		"dubbo://10.20.153.11:20880/io.coon.test.TestService?interface=io.coon.test.TestService&version=1.0.0&enabled=false",
+		"dubbo://10.20.153.12:20880/io.coon.test.OtherService?interface=io.coon.test.OtherService&version=1.0.0",
+	};
+
+	// 除category外，预编译匹配与MregCommon.isMatch结果一致
+	@Test
+	public void testSameAsIsMatch() {
+		int matched = 0;
+		for (String c : CONSUMERS) {
+			NURL consumer = NURL.valueOf(c);
+			NurlMatcher matcher = NurlMatcher.compile(consumer);
+			for (String p : PROVIDERS) {
+				NURL provider = NURL.valueOf(p);
+				boolean expected = MregCommon.isMatch(consumer, provider);
+				Assert.assertEquals(consumer + " <- " + provider, expected, matcher.isMatch(provider));
+				if (expected) {
+					matched++;
+				}
+			}
+		}
+		Assert.assertTrue("nothing matched", matched > 0);
+	}
+
+	// category按逗号分隔的完整值匹配，不再按子串匹配
+	@Test
+	public void testExactCategory() {
+		NURL consumer = NURL.valueOf("consumer://10.20.153.10/io.coon.test.TestService"
+				+ "?interface=io.coon.test.TestService&version=1.0.0&category=providers2,routers");
+		NURL provider = NURL.valueOf("dubbo://10.20.153.11:20880/io.coon.test.TestService"
+				+ "?interface=io.coon.test.TestService&version=1.0.0&category=providers");
+		NURL router = NURL.valueOf("route://0.0.0.0/io.coon.test.TestService"
+				+ "?interface=io.coon.test.TestService&version=1.0.0&category=routers");
+		NurlMatcher matcher = NurlMatcher.compile(consumer);
+
+		Assert.assertTrue("isMatch is expected to match category by substring", MregCommon.isMatch(consumer, provider));
+		Assert.assertFalse("providers must not match category providers2", matcher.isMatch(provider));
+		Assert.assertTrue(matcher.isMatch(router));
+		Assert.assertTrue(matcher.isMatchCategory("routers"));
+		Assert.assertFalse(matcher.isMatchCategory("router"));
+
+		// 排除列表同样按完整值匹配
+		NurlMatcher exclude = NurlMatcher.compile(NURL.valueOf("consumer://10.20.153.10/io.coon.test.TestService"
+				+ "?interface=io.coon.test.TestService&category=-routers"));
+		Assert.assertFalse(exclude.isMatchCategory("routers"));
+		Assert.assertTrue(exclude.isMatchCategory("providers"));
+		Assert.assertTrue(exclude.isMatchCategory("router"));
+	}
+
+}
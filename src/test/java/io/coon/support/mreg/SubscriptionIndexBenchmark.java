@@ -0,0 +1,81 @@
+package io.coon.support.mreg;
+
+import io.neural.NURL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SubscriptionIndexBenchmark {
+
+	@Param({ "1000", "5000" })
+	public int subscriptions;
+
+	private List<NURL> nurls;
+	private SubscriptionIndex index;
+	private NURL provider;
+
+	@Setup
+	public void setup() {
+		nurls = new ArrayList<NURL>();
+		index = new SubscriptionIndex();
+		NURL governor = NURL.valueOf("admin://0.0.0.0/*?interface=*&group=*&version=*&classifier=*&category=*&enabled=*&check=false");
+		nurls.add(governor);
+		index.add(governor);
+		for (int i = 0; i < subscriptions; i++) {
+			NURL nurl = NURL.valueOf("consumer://10.20.153.10/io.coon.test.TestService" + i
+					+ "?interface=io.coon.test.TestService" + i + "&group=g1,g2&version=1.0.0&category=providers,routers");
+			nurls.add(nurl);
+			index.add(nurl);
+		}
+		provider = NURL.valueOf("dubbo://10.20.153.11:20880/io.coon.test.TestService100"
+				+ "?interface=io.coon.test.TestService100&group=g2&version=1.0.0&category=providers");
+
+		// 两种方式都应匹配通配订阅和TestService100的订阅
+		if (linear() != 2 || indexed().size() != 2) {
+			throw new IllegalStateException("unexpected matches: linear " + linear() + ", indexed " + indexed());
+		}
+	}
+
+	@Benchmark
+	public int linear() {
+		int matched = 0;
+		for (NURL nurl : nurls) {
+			if (MregCommon.isMatch(nurl, provider)) {
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	@Benchmark
+	public List<NURL> indexed() {
+		return index.lookup(provider);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(SubscriptionIndexBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}